@@ -5,6 +5,10 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.TimeUnit;
 
 public class Client implements Runnable {
@@ -12,6 +16,12 @@ public class Client implements Runnable {
     private PrintWriter out;
     private BufferedReader in;
 
+    /**
+     * Messages pushed by the server for a subscription, read while
+     * waiting for the response of another command
+     */
+    private final Queue<String> pendingMessages = new ArrayDeque<>();
+
     public void setupConnection(String host, int port) {
         try {
             this.clientSocket = new Socket(host, port);
@@ -38,6 +48,195 @@ public class Client implements Runnable {
         }
     }
 
+    /**
+     * @return the value stored for the key, null if there's none
+     */
+    public String get(String key) {
+        return parseValue(request("GET " + checkKey(key)));
+    }
+
+    public void put(String key, String value) {
+        expect(request("PUT " + checkKey(key) + " " + checkValue(value)), KeyValueCommands.OK);
+    }
+
+    /**
+     * @return true if the key existed
+     */
+    public boolean del(String key) {
+        String response = request("DEL " + checkKey(key));
+        if (KeyValueCommands.DELETED.equals(response)) {
+            return true;
+        }
+        expect(response, KeyValueCommands.NOT_FOUND);
+        return false;
+    }
+
+    /**
+     * All the keys are fetched with a single command
+     *
+     * @return values in the same order as the keys, null for the missing ones
+     */
+    public List<String> mget(List<String> keys) {
+        keys.forEach(Client::checkKey);
+        String header = request("MGET " + String.join(" ", keys));
+        if (header == null || !header.startsWith(KeyValueCommands.MULTI_PREFIX)) {
+            throw new RuntimeException("Unexpected response from server: " + header);
+        }
+
+        int count = Integer.parseInt(header.substring(KeyValueCommands.MULTI_PREFIX.length()));
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(parseValue(readResponse()));
+        }
+        return values;
+    }
+
+    /**
+     * Pipelining: all the GETs are written in one go, then all the responses are read,
+     * so the round trips to the server overlap instead of adding up.
+     * Keep batches to a few hundred keys: the responses aren't read until everything
+     * is written, so a huge batch can fill up the socket buffers both ways and stall
+     *
+     * @return values in the same order as the keys, null for the missing ones
+     */
+    public List<String> pipelinedGet(List<String> keys) {
+        keys.forEach(Client::checkKey);  // before writing anything, not to leave a half-sent batch
+        for (String key : keys) {
+            this.out.print("GET " + key + "\n");
+        }
+        this.out.flush();
+
+        List<String> values = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            values.add(parseValue(readResponse()));
+        }
+        return values;
+    }
+
+    /**
+     * Same as pipelinedGet, for writes
+     */
+    public void pipelinedPut(List<String> keys, List<String> values) {
+        if (keys.size() != values.size()) {
+            throw new IllegalArgumentException("Got " + keys.size() + " keys for " + values.size() + " values");
+        }
+        keys.forEach(Client::checkKey);
+        values.forEach(Client::checkValue);
+        for (int i = 0; i < keys.size(); i++) {
+            this.out.print("PUT " + keys.get(i) + " " + values.get(i) + "\n");
+        }
+        this.out.flush();
+
+        for (int i = 0; i < keys.size(); i++) {
+            expect(readResponse(), KeyValueCommands.OK);
+        }
+    }
+
+    public void subscribe(String channel) {
+        expect(request("SUBSCRIBE " + channel), "SUBSCRIBED " + channel);
+    }
+
+    public void unsubscribe(String channel) {
+        expect(request("UNSUBSCRIBE " + channel), "UNSUBSCRIBED " + channel);
+    }
+
+    /**
+     * @return the number of subscribers the message was queued for
+     */
+    public int publish(String channel, String message) {
+        String response = request("PUBLISH " + channel + " " + message);
+        if (response == null || !response.startsWith("PUBLISHED ")) {
+            throw new RuntimeException("Unexpected response from server: " + response);
+        }
+        return Integer.parseInt(response.substring("PUBLISHED ".length()));
+    }
+
+    /**
+     * Blocks until the server pushes a message for one of the subscribed channels
+     *
+     * @return "channel message", null if the server closed the connection
+     */
+    public String nextMessage() {
+        if (!this.pendingMessages.isEmpty()) {
+            return this.pendingMessages.poll();
+        }
+        try {
+            String line = this.in.readLine();
+            if (line == null) {
+                return null;
+            }
+            if (!line.startsWith(PubSubBroker.MESSAGE_PREFIX)) {
+                throw new RuntimeException("Unexpected response from server: " + line);
+            }
+            return line.substring(PubSubBroker.MESSAGE_PREFIX.length());
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private String request(String command) {
+        this.out.println(command);
+        return readResponse();
+    }
+
+    private String readResponse() {
+        try {
+            String line = this.in.readLine();
+            while (line != null && line.startsWith(PubSubBroker.MESSAGE_PREFIX)) {
+                this.pendingMessages.add(line.substring(PubSubBroker.MESSAGE_PREFIX.length()));
+                line = this.in.readLine();
+            }
+            return line;
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String parseValue(String response) {
+        if (KeyValueCommands.NIL.equals(response)) {
+            return null;
+        }
+        if (response == null || !response.startsWith(KeyValueCommands.VALUE_PREFIX)) {
+            throw new RuntimeException("Unexpected response from server: " + response);
+        }
+        return response.substring(KeyValueCommands.VALUE_PREFIX.length());
+    }
+
+    /**
+     * The protocol is line based and the key ends at the first space, so a key containing
+     * a space or a line break would be read by the server as a different key, or even as
+     * another command
+     */
+    private static String checkKey(String key) {
+        if (key == null || key.isEmpty()) {
+            throw new IllegalArgumentException("Key must not be empty");
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (Character.isWhitespace(key.charAt(i))) {
+                throw new IllegalArgumentException("Key must not contain whitespace: " + key);
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Values may contain spaces, as they run to the end of the line, but not line breaks
+     */
+    private static String checkValue(String value) {
+        if (value == null || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("Value must not be null or contain line breaks");
+        }
+        return value;
+    }
+
+    private static void expect(String response, String expected) {
+        if (!expected.equals(response)) {
+            throw new RuntimeException("Unexpected response from server: " + response);
+        }
+    }
+
     public void tearDownClient() {
         System.out.println("Tearing down the client - threaId: " + Thread.currentThread().getId());
         try {
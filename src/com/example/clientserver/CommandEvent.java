@@ -0,0 +1,20 @@
+package com.example.clientserver;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event committed for every command processed by a ServerTask,
+ * the duration of the event is the latency of the command
+ */
+@Name("com.example.server.Command")
+@Label("Server Command")
+@Category({"com.example", "ServerTCP"})
+@Description("A command received from a client and processed by the server")
+class CommandEvent extends jdk.jfr.Event {
+
+    @Label("Command")
+    String command;
+}
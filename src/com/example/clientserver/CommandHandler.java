@@ -0,0 +1,17 @@
+package com.example.clientserver;
+
+/**
+ * Handles one command of the ServerTask protocol, registered in a CommandRegistry
+ * against the opcode (first word of the line) it responds to
+ */
+@FunctionalInterface
+public interface CommandHandler {
+
+    /**
+     * @param session - the session the command was received on, to reply to the client
+     * @param arguments - the rest of the line after the opcode and a single space,
+     *                  an empty string when the command has no arguments
+     * @return true if the session should end after this command
+     */
+    boolean handle(ServerTask session, String arguments);
+}
@@ -0,0 +1,178 @@
+package com.example.clientserver;
+
+/**
+ * Dispatch table from the opcode of a message to its CommandHandler.
+ *
+ * The opcodes are kept in an open-addressing hash table, hashed ASCII-case-insensitively,
+ * so finding the handler costs a single pass over the opcode's characters plus one
+ * comparison in the common case, however many commands are registered.
+ * No lower-cased copy of the message is made, and no substring for the opcode.
+ *
+ * Handlers are meant to be registered at startup, before the server accepts
+ * connections. Each registration rebuilds the table and publishes it through a
+ * volatile field, so lookups never lock.
+ */
+public class CommandRegistry {
+
+    /**
+     * Where a handler runs:
+     *      INLINE - on the session's thread, for cheap commands
+     *      BLOCKING - on the server's pool for blocking commands, so a slow handler
+     *          only occupies that (separately sized) pool, and the session thread
+     *          gives up on it after the blocking-command timeout
+     */
+    public enum ExecutionMode {
+        INLINE,
+        BLOCKING
+    }
+
+    public static final class Command {
+        private final String opcode;
+        private final CommandHandler handler;
+        private final ExecutionMode mode;
+
+        Command(String opcode, CommandHandler handler, ExecutionMode mode) {
+            this.opcode = opcode;
+            this.handler = handler;
+            this.mode = mode;
+        }
+
+        public String getOpcode() {
+            return opcode;
+        }
+
+        public CommandHandler getHandler() {
+            return handler;
+        }
+
+        public ExecutionMode getMode() {
+            return mode;
+        }
+    }
+
+    private static final int INITIAL_TABLE_SIZE = 16;
+
+    /**
+     * Table size is a power of 2, kept at most half full so probe sequences stay short
+     */
+    private volatile Command[] table = new Command[INITIAL_TABLE_SIZE];
+    private int count = 0;
+
+    /**
+     * Registers the default commands of the protocol: PING and the "!" abort signal
+     */
+    public static CommandRegistry withDefaultCommands() {
+        CommandRegistry registry = new CommandRegistry();
+        registry.register("ping", (session, arguments) -> {
+            session.reply("PONG");
+            return false;
+        });
+        registry.register("!", (session, arguments) -> {
+            session.reply("Abort signal received. Ending session!");
+            return true;
+        });
+        return registry;
+    }
+
+    public synchronized CommandRegistry register(String opcode, CommandHandler handler) {
+        return register(opcode, handler, ExecutionMode.INLINE);
+    }
+
+    /**
+     * @param opcode - ASCII word, matched case-insensitively against the first word of a message,
+     *               replaces the handler already registered for it, if any
+     */
+    public synchronized CommandRegistry register(String opcode, CommandHandler handler, ExecutionMode mode) {
+        if (opcode.isEmpty() || opcode.indexOf(' ') >= 0) {
+            throw new IllegalArgumentException("Opcode must be a single non-empty word: '" + opcode + "'");
+        }
+
+        Command[] newTable = this.table.clone();
+        if ((this.count + 1) * 2 > newTable.length) {
+            newTable = resize(newTable);
+        }
+        if (insert(newTable, new Command(opcode, handler, mode))) {
+            this.count++;
+        }
+        this.table = newTable;
+        return this;
+    }
+
+    /**
+     * @param message - the whole line received from the client
+     * @return the command for the message's opcode, or null if there's none
+     */
+    public Command lookup(String message) {
+        int opcodeLength = opcodeLength(message);
+        Command[] currentTable = this.table;
+        int mask = currentTable.length - 1;
+
+        for (int index = hash(message, opcodeLength) & mask; ; index = (index + 1) & mask) {
+            Command command = currentTable[index];
+            if (command == null) {
+                return null;
+            }
+            if (command.opcode.length() == opcodeLength
+                    && command.opcode.regionMatches(true, 0, message, 0, opcodeLength)) {
+                return command;
+            }
+        }
+    }
+
+    /**
+     * @return the arguments following the opcode of the message
+     */
+    static String arguments(String message) {
+        int opcodeLength = opcodeLength(message);
+        return opcodeLength < message.length() ? message.substring(opcodeLength + 1) : "";
+    }
+
+    private static int opcodeLength(String message) {
+        int separator = message.indexOf(' ');
+        return separator < 0 ? message.length() : separator;
+    }
+
+    /**
+     * FNV-1a over the ASCII-lower-cased characters of the first length chars of the text
+     */
+    private static int hash(String text, int length) {
+        int hash = 0x811c9dc5;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            hash ^= c;
+            hash *= 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @return true if a new slot was taken, false if an existing opcode was replaced
+     */
+    private static boolean insert(Command[] table, Command command) {
+        int mask = table.length - 1;
+        for (int index = hash(command.opcode, command.opcode.length()) & mask; ; index = (index + 1) & mask) {
+            Command existing = table[index];
+            if (existing == null) {
+                table[index] = command;
+                return true;
+            }
+            if (existing.opcode.equalsIgnoreCase(command.opcode)) {
+                table[index] = command;
+                return false;
+            }
+        }
+    }
+
+    private static Command[] resize(Command[] table) {
+        Command[] newTable = new Command[table.length * 2];
+        for (Command command : table) {
+            if (command != null) {
+                insert(newTable, command);
+            }
+        }
+        return newTable;
+    }
+}
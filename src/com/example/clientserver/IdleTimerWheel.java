@@ -0,0 +1,135 @@
+package com.example.clientserver;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timer wheel closing the sessions which haven't received a message
+ * for idleTimeoutMillis.
+ *
+ * The wheel is an array of slots, each slot holds the sessions due around the
+ * same tick, and a single thread advances over one slot every tickMillis.
+ *
+ * Keeping this cheap with a large number of connections:
+ *      - a message received by a session only updates its last activity time,
+ *        the session is NOT moved in the wheel
+ *      - when the slot of a session comes up, the session is closed if it has
+ *        really been idle long enough, otherwise it's moved to the slot of its
+ *        new deadline (lazy re-scheduling)
+ *      - so each tick only looks at the sessions of one slot, and a busy session
+ *        is looked at about once per idle timeout, instead of once per message
+ *
+ * Complexity:
+ *      O(1) to schedule/cancel a session, O(sessions in the slot) per tick
+ *
+ * Timeouts fire up to one tick late, which is fine for idle detection
+ */
+class IdleTimerWheel {
+
+    private static final int WHEEL_SIZE = 512;
+
+    private final long tickMillis;
+    private final long idleTimeoutNanos;
+    private final Set<ServerTask>[] slots;
+    private final ScheduledExecutorService ticker;
+
+    /**
+     * Only advanced by the ticker thread
+     */
+    private volatile long currentTick = 0;
+
+    IdleTimerWheel(long idleTimeoutMillis, long tickMillis) {
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.tickMillis = tickMillis;
+        @SuppressWarnings("unchecked")
+        Set<ServerTask>[] slots = (Set<ServerTask>[]) new Set<?>[WHEEL_SIZE];
+        this.slots = slots;
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            this.slots[i] = ConcurrentHashMap.newKeySet();
+        }
+
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "idle-timer-wheel");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts tracking the session, its idle time counts from its last activity
+     */
+    void schedule(ServerTask session) {
+        scheduleIn(session, this.idleTimeoutNanos);
+    }
+
+    /**
+     * Stops tracking the session, once it has ended.
+     *
+     * The ticker may be moving the session to another slot at the same time: the flag
+     * is set before reading the slot here, and checked after adding to the new slot
+     * in scheduleIn(), so one of the two always removes the session from the new slot
+     */
+    void cancel(ServerTask session) {
+        session.setWheelCancelled();
+        int slot = session.getWheelSlot();
+        if (slot >= 0) {
+            this.slots[slot].remove(session);
+        }
+    }
+
+    /**
+     * Sessions currently in the wheel, for tests and diagnostics
+     */
+    int trackedCount() {
+        int tracked = 0;
+        for (Set<ServerTask> slot : this.slots) {
+            tracked += slot.size();
+        }
+        return tracked;
+    }
+
+    void stop() {
+        this.ticker.shutdownNow();
+    }
+
+    /**
+     * Puts the session in the slot due after delayNanos, called by the ticker to re-schedule
+     * a session which has been active meanwhile
+     */
+    void scheduleIn(ServerTask session, long delayNanos) {
+        // at least one tick ahead, so it never lands in the slot being processed,
+        // and at most one round of the wheel, beyond that it gets re-scheduled
+        long delayMillis = TimeUnit.NANOSECONDS.toMillis(delayNanos);
+        long ticks = Math.min(Math.max(1, (delayMillis + this.tickMillis - 1) / this.tickMillis), WHEEL_SIZE - 1);
+        int slot = (int) ((this.currentTick + ticks) % WHEEL_SIZE);
+        session.setWheelSlot(slot);
+        this.slots[slot].add(session);
+
+        if (session.isWheelCancelled()) {
+            this.slots[slot].remove(session);  // the session ended meanwhile, don't keep it around
+        }
+    }
+
+    private void tick() {
+        long tick = this.currentTick + 1;
+        this.currentTick = tick;
+        Set<ServerTask> due = this.slots[(int) (tick % WHEEL_SIZE)];
+        // nanoTime, not the wall clock, so a clock adjustment can't expire or extend every session at once
+        long now = System.nanoTime();
+
+        for (ServerTask session : due) {
+            due.remove(session);
+            long idleNanos = now - session.getLastActivityNanos();
+            if (idleNanos >= this.idleTimeoutNanos) {
+                session.closeIdle();
+            }
+            else {
+                scheduleIn(session, this.idleTimeoutNanos - idleNanos);
+            }
+        }
+    }
+}
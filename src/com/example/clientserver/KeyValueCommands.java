@@ -0,0 +1,86 @@
+package com.example.clientserver;
+
+import com.example.map.StripedMyMap;
+
+/**
+ * GET/PUT/DEL/MGET commands, turning ServerTCP into a small key-value cache
+ * shared by all the clients.
+ *
+ * Protocol (keys are single words, a value is the rest of the line):
+ *      PUT key value       -> OK
+ *      GET key             -> VALUE value | NIL
+ *      DEL key             -> DELETED | NOT_FOUND
+ *      MGET key1 key2 ...  -> *count, followed by one VALUE/NIL line per key
+ *      wrong arguments     -> ERR message
+ *
+ * The handlers are cheap, they run INLINE on the session's thread.
+ * Concurrent clients only contend when their keys fall in the same stripe of the map
+ */
+public final class KeyValueCommands {
+
+    static final String OK = "OK";
+    static final String VALUE_PREFIX = "VALUE ";
+    static final String NIL = "NIL";
+    static final String DELETED = "DELETED";
+    static final String NOT_FOUND = "NOT_FOUND";
+    static final String MULTI_PREFIX = "*";
+    static final String ERROR_PREFIX = "ERR ";
+
+    private KeyValueCommands() {
+    }
+
+    public static void register(CommandRegistry registry, StripedMyMap<String, String> store) {
+        registry.register("put", (session, arguments) -> {
+            int separator = arguments.indexOf(' ');
+            if (separator <= 0) {
+                session.reply(ERROR_PREFIX + "usage: PUT key value");
+                return false;
+            }
+            store.put(arguments.substring(0, separator), arguments.substring(separator + 1));
+            session.reply(OK);
+            return false;
+        });
+
+        registry.register("get", (session, arguments) -> {
+            if (!isSingleKey(arguments)) {
+                session.reply(ERROR_PREFIX + "usage: GET key");
+                return false;
+            }
+            session.reply(valueResponse(store.get(arguments)));
+            return false;
+        });
+
+        registry.register("del", (session, arguments) -> {
+            if (!isSingleKey(arguments)) {
+                session.reply(ERROR_PREFIX + "usage: DEL key");
+                return false;
+            }
+            session.reply(store.remove(arguments) ? DELETED : NOT_FOUND);
+            return false;
+        });
+
+        registry.register("mget", (session, arguments) -> {
+            if (arguments.isBlank()) {
+                session.reply(ERROR_PREFIX + "usage: MGET key1 key2 ...");
+                return false;
+            }
+            String[] keys = arguments.trim().split(" +");
+
+            // the whole response goes out as a single write
+            StringBuilder response = new StringBuilder(MULTI_PREFIX).append(keys.length);
+            for (String key : keys) {
+                response.append('\n').append(valueResponse(store.get(key)));
+            }
+            session.reply(response.toString());
+            return false;
+        });
+    }
+
+    private static boolean isSingleKey(String arguments) {
+        return !arguments.isEmpty() && arguments.indexOf(' ') < 0;
+    }
+
+    private static String valueResponse(String value) {
+        return value == null ? NIL : VALUE_PREFIX + value;
+    }
+}
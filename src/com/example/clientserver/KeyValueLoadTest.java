@@ -0,0 +1,130 @@
+package com.example.clientserver;
+
+import com.example.map.StripedMyMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the key-value commands over loopback: starts a ServerTCP in this JVM,
+ * then runs CLIENTS concurrent clients against it, first with one request per
+ * round trip, then pipelined, then with MGET, and finally a PUT/DEL mix, where the
+ * map keeps growing and shrinking
+ */
+public class KeyValueLoadTest {
+
+    private static final int PORT = 4568;
+    private static final int CLIENTS = 8;
+    private static final int KEYS = 10_000;
+    private static final int OPERATIONS_PER_CLIENT = 20_000;
+    private static final int BATCH_SIZE = 100;
+
+    public static void main(String [] args) throws Exception {
+        ServerTCP server = new ServerTCP(new ServerConfig()
+                .setWorkerThreads(CLIENTS)
+                .setLogMessages(false));
+        KeyValueCommands.register(server.getCommandRegistry(), new StripedMyMap<>());
+
+        Thread serverThread = new Thread(() -> server.startServer(PORT), "load-test-server");
+        serverThread.start();
+        while (!server.isRunning()) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            runPhase(clients, "PUT/GET, one per round trip", client -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < OPERATIONS_PER_CLIENT; i++) {
+                    int key = random.nextInt(KEYS);
+                    if (i % 4 == 0) {
+                        client.put(generateKey(key), generateValue(key));
+                    }
+                    else {
+                        client.get(generateKey(key));
+                    }
+                }
+            });
+
+            runPhase(clients, "GET, pipelined by " + BATCH_SIZE, client -> {
+                for (int i = 0; i < OPERATIONS_PER_CLIENT; i += BATCH_SIZE) {
+                    client.pipelinedGet(randomKeys());
+                }
+            });
+
+            runPhase(clients, "MGET of " + BATCH_SIZE + " keys", client -> {
+                for (int i = 0; i < OPERATIONS_PER_CLIENT; i += BATCH_SIZE) {
+                    client.mget(randomKeys());
+                }
+            });
+
+            runPhase(clients, "PUT/DEL, one per round trip", client -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < OPERATIONS_PER_CLIENT; i++) {
+                    int key = random.nextInt(KEYS);
+                    if (i % 2 == 0) {
+                        client.put(generateKey(key), generateValue(key));
+                    }
+                    else {
+                        client.del(generateKey(key));
+                    }
+                }
+            });
+        } finally {
+            clients.shutdown();
+            server.stop();
+            serverThread.join();
+        }
+    }
+
+    private interface ClientWorkload {
+        void run(Client client);
+    }
+
+    private static void runPhase(ExecutorService clients, String name, ClientWorkload workload) throws Exception {
+        List<Future<?>> results = new ArrayList<>();
+        long startNanos = System.nanoTime();
+
+        for (int i = 0; i < CLIENTS; i++) {
+            results.add(clients.submit(() -> {
+                Client client = new Client();
+                client.setupConnection("localhost", PORT);
+                try {
+                    workload.run(client);
+                } finally {
+                    client.tearDownClient();
+                }
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long operations = (long) CLIENTS * OPERATIONS_PER_CLIENT;
+        System.out.printf("%-32s %,12d ops in %6d ms = %,12.0f ops/s%n", name, operations,
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos), operations * 1e9 / elapsedNanos);
+    }
+
+    private static List<String> randomKeys() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<String> keys = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            keys.add(generateKey(random.nextInt(KEYS)));
+        }
+        return keys;
+    }
+
+    private static String generateKey(int number) {
+        return "key_" + number;
+    }
+
+    private static String generateValue(int number) {
+        return "value_" + number;
+    }
+}
@@ -0,0 +1,350 @@
+package com.example.clientserver;
+
+import com.example.queue.SharedQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SUBSCRIBE/UNSUBSCRIBE/PUBLISH commands, fanning out every published message
+ * to the sessions subscribed to its channel.
+ *
+ * Protocol:
+ *      SUBSCRIBE channel           -> SUBSCRIBED channel
+ *      UNSUBSCRIBE channel         -> UNSUBSCRIBED channel
+ *      PUBLISH channel message     -> PUBLISHED number-of-subscribers
+ *      pushed to the subscribers   -> MESSAGE channel message
+ *
+ * A publisher never writes to a subscriber's socket: it only adds the message to the
+ * subscriber's bounded SharedQueue, which never blocks. The writer threads drain the
+ * queues in batches, and each batch goes out as a single socket write.
+ *
+ * When a subscriber doesn't keep up and its queue is full, the SlowConsumerPolicy decides
+ * whether to drop its oldest message, drop the new one, or disconnect it. Either way the
+ * publishers and the other subscribers carry on.
+ *
+ * A subscriber which stops reading altogether eventually fills its socket buffer, and the
+ * write to it blocks, holding one of the few writer threads shared by all the subscribers.
+ * Such a write is timed: once it has been blocked for writeStallTimeoutMillis (checked by the
+ * next publish to the subscriber, and by a watchdog thread in case there's none), the
+ * subscriber is disconnected whatever the policy, which fails the write and frees the thread
+ */
+public class PubSubBroker {
+
+    public enum SlowConsumerPolicy {
+        DROP_OLDEST,
+        DROP_NEWEST,
+        DISCONNECT
+    }
+
+    static final String MESSAGE_PREFIX = "MESSAGE ";
+
+    private static final int DEFAULT_SUBSCRIBER_BUFFER_SIZE = 1024;
+    private static final int DEFAULT_WRITER_THREADS = 2;
+    private static final long DEFAULT_WRITE_STALL_TIMEOUT_MILLIS = 1000;
+
+    /**
+     * Messages written per batch, before the writer moves on to the next subscriber
+     */
+    private static final int WRITE_BATCH_SIZE = 64;
+
+    private final int subscriberBufferSize;
+    private final SlowConsumerPolicy slowConsumerPolicy;
+    private final ExecutorService writers;
+    private final long writeStallTimeoutNanos;
+
+    /**
+     * Disconnects the subscribers stuck in a write, when no publish comes along to notice
+     */
+    private final ScheduledExecutorService stalledWriteWatchdog;
+
+    private final ConcurrentMap<String, Set<Subscriber>> channels = new ConcurrentHashMap<>();
+    private final ConcurrentMap<ServerTask, Subscriber> subscribers = new ConcurrentHashMap<>();
+
+    private final LongAdder droppedMessages = new LongAdder();
+    private final LongAdder disconnectedSubscribers = new LongAdder();
+
+    public PubSubBroker() {
+        this(DEFAULT_SUBSCRIBER_BUFFER_SIZE, SlowConsumerPolicy.DROP_OLDEST, DEFAULT_WRITER_THREADS);
+    }
+
+    public PubSubBroker(int subscriberBufferSize, SlowConsumerPolicy slowConsumerPolicy, int writerThreads) {
+        this(subscriberBufferSize, slowConsumerPolicy, writerThreads, DEFAULT_WRITE_STALL_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param writeStallTimeoutMillis - how long a write to a subscriber may stay blocked
+     *                                before the subscriber is disconnected
+     */
+    public PubSubBroker(int subscriberBufferSize, SlowConsumerPolicy slowConsumerPolicy, int writerThreads,
+                        long writeStallTimeoutMillis) {
+        this.subscriberBufferSize = subscriberBufferSize;
+        this.slowConsumerPolicy = slowConsumerPolicy;
+        this.writeStallTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(writeStallTimeoutMillis);
+        this.writers = Executors.newFixedThreadPool(writerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "pubsub-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.stalledWriteWatchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pubsub-stalled-write-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long checkIntervalMillis = Math.max(1, writeStallTimeoutMillis / 2);
+        this.stalledWriteWatchdog.scheduleAtFixedRate(this::disconnectStalledSubscribers,
+                checkIntervalMillis, checkIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void registerCommands(CommandRegistry registry) {
+        registry.register("subscribe", (session, arguments) -> {
+            if (!isSingleWord(arguments)) {
+                session.reply("ERR usage: SUBSCRIBE channel");
+                return false;
+            }
+            subscribe(session, arguments);
+            session.reply("SUBSCRIBED " + arguments);
+            return false;
+        });
+
+        registry.register("unsubscribe", (session, arguments) -> {
+            if (!isSingleWord(arguments)) {
+                session.reply("ERR usage: UNSUBSCRIBE channel");
+                return false;
+            }
+            unsubscribe(session, arguments);
+            session.reply("UNSUBSCRIBED " + arguments);
+            return false;
+        });
+
+        registry.register("publish", (session, arguments) -> {
+            int separator = arguments.indexOf(' ');
+            if (separator <= 0) {
+                session.reply("ERR usage: PUBLISH channel message");
+                return false;
+            }
+            int receivers = publish(arguments.substring(0, separator), arguments.substring(separator + 1));
+            session.reply("PUBLISHED " + receivers);
+            return false;
+        });
+    }
+
+    /**
+     * @return the number of subscribers the message was queued for
+     */
+    public int publish(String channel, String message) {
+        Set<Subscriber> channelSubscribers = this.channels.get(channel);
+        if (channelSubscribers == null) {
+            return 0;
+        }
+
+        // formatted once, shared by all the subscribers
+        String line = MESSAGE_PREFIX + channel + " " + message;
+        int receivers = 0;
+        for (Subscriber subscriber : channelSubscribers) {
+            if (subscriber.offer(line)) {
+                receivers++;
+            }
+        }
+        return receivers;
+    }
+
+    public long getDroppedMessages() {
+        return this.droppedMessages.sum();
+    }
+
+    public long getDisconnectedSubscribers() {
+        return this.disconnectedSubscribers.sum();
+    }
+
+    public void stop() {
+        this.stalledWriteWatchdog.shutdownNow();
+        this.writers.shutdownNow();
+    }
+
+    private void disconnectStalledSubscribers() {
+        long now = System.nanoTime();
+        for (Subscriber subscriber : this.subscribers.values()) {
+            if (subscriber.isWriteStalled(now)) {
+                subscriber.disconnect();
+            }
+        }
+    }
+
+    private void subscribe(ServerTask session, String channel) {
+        Subscriber subscriber = this.subscribers.computeIfAbsent(session, newSession -> {
+            newSession.onClose(() -> unsubscribeAll(newSession));
+            return new Subscriber(newSession);
+        });
+        if (subscriber.channels.add(channel)) {
+            // the add happens inside compute(), so it can't land in a set that
+            // removeFromChannel() is dropping along with its last subscriber
+            this.channels.compute(channel, (name, channelSubscribers) -> {
+                Set<Subscriber> subscribersOfChannel = channelSubscribers != null ?
+                        channelSubscribers : ConcurrentHashMap.newKeySet();
+                subscribersOfChannel.add(subscriber);
+                return subscribersOfChannel;
+            });
+        }
+    }
+
+    private void unsubscribe(ServerTask session, String channel) {
+        Subscriber subscriber = this.subscribers.get(session);
+        if (subscriber != null && subscriber.channels.remove(channel)) {
+            removeFromChannel(subscriber, channel);
+        }
+    }
+
+    private void unsubscribeAll(ServerTask session) {
+        Subscriber subscriber = this.subscribers.remove(session);
+        if (subscriber == null) {
+            return;
+        }
+        for (String channel : subscriber.channels) {
+            removeFromChannel(subscriber, channel);
+        }
+        subscriber.channels.clear();
+    }
+
+    private void removeFromChannel(Subscriber subscriber, String channel) {
+        // drops the channel along with its last subscriber. Both this and subscribe()
+        // change the set inside the map's atomic compute, so a concurrent subscribe()
+        // either lands in the set before it's checked for emptiness, or in a new set
+        this.channels.computeIfPresent(channel, (name, channelSubscribers) -> {
+            channelSubscribers.remove(subscriber);
+            return channelSubscribers.isEmpty() ? null : channelSubscribers;
+        });
+    }
+
+    private static boolean isSingleWord(String arguments) {
+        return !arguments.isEmpty() && arguments.indexOf(' ') < 0;
+    }
+
+    /**
+     * A subscribed session, with its queue of messages waiting to be written to it
+     */
+    private class Subscriber {
+
+        private final ServerTask session;
+        private final Set<String> channels = ConcurrentHashMap.newKeySet();
+        private final SharedQueue<String> buffer;
+
+        /**
+         * Set while a drain() of this subscriber is queued or running on a writer thread,
+         * so there's never more than one, and a burst of publishes schedules it only once
+         */
+        private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+
+        private final AtomicBoolean disconnected = new AtomicBoolean(false);
+
+        /**
+         * When the write in progress started, 0 while not writing
+         */
+        private volatile long writeStartedNanos;
+
+        Subscriber(ServerTask session) {
+            this.session = session;
+            this.buffer = new SharedQueue<>(String.class, subscriberBufferSize);
+        }
+
+        /**
+         * Called on the publisher's thread, never blocks
+         *
+         * @return false if the message was dropped
+         */
+        boolean offer(String line) {
+            if (this.disconnected.get()) {
+                return false;
+            }
+            if (isWriteStalled(System.nanoTime())) {
+                disconnect();
+                return false;
+            }
+
+            switch (slowConsumerPolicy) {
+                case DROP_OLDEST:
+                    if (this.buffer.addEvictingOldest(line) != null) {
+                        droppedMessages.increment();
+                    }
+                    break;
+                case DROP_NEWEST:
+                    if (!this.buffer.add(line)) {
+                        droppedMessages.increment();
+                        return false;
+                    }
+                    break;
+                case DISCONNECT:
+                    if (!this.buffer.add(line)) {
+                        disconnect();
+                        return false;
+                    }
+                    break;
+            }
+
+            scheduleDrain();
+            return true;
+        }
+
+        boolean isWriteStalled(long now) {
+            long startedNanos = this.writeStartedNanos;
+            return startedNanos != 0 && now - startedNanos > writeStallTimeoutNanos;
+        }
+
+        /**
+         * Closing the socket also fails a write blocked on it. The session's thread
+         * unsubscribes it, once its read fails on the closed socket
+         */
+        void disconnect() {
+            if (this.disconnected.compareAndSet(false, true)) {
+                disconnectedSubscribers.increment();
+                this.session.close();
+            }
+        }
+
+        private void scheduleDrain() {
+            if (this.drainScheduled.compareAndSet(false, true)) {
+                writers.execute(this::drain);
+            }
+        }
+
+        /**
+         * Runs on a writer thread, writes one batch and re-schedules itself if there's more,
+         * so a busy subscriber doesn't hold the writer thread from the others
+         */
+        private void drain() {
+            List<String> batch = new ArrayList<>(WRITE_BATCH_SIZE);
+            this.buffer.drainTo(batch, WRITE_BATCH_SIZE);
+
+            // what's left for a disconnected subscriber is only drained away
+            if (!batch.isEmpty() && !this.disconnected.get()) {
+                StringBuilder lines = new StringBuilder();
+                for (String line : batch) {
+                    lines.append(line).append('\n');
+                }
+                this.writeStartedNanos = System.nanoTime();
+                try {
+                    this.session.write(lines.toString());
+                } finally {
+                    this.writeStartedNanos = 0;
+                }
+            }
+
+            this.drainScheduled.set(false);
+            // a message may have been added after drainTo() but before the flag was cleared,
+            // its publisher saw the flag still set and didn't schedule a drain
+            if (this.buffer.size() > 0) {
+                scheduleDrain();
+            }
+        }
+    }
+}
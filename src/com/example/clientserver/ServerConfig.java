@@ -0,0 +1,251 @@
+package com.example.clientserver;
+
+/**
+ * Tunables of a ServerTCP, the defaults match what the server used to hard-code
+ * (a pool of 10 threads), plus limits so that a connection surge can't pile up
+ * an unbounded number of sockets (and file descriptors) in the executor queue.
+ *
+ * A session holds its worker thread until the client disconnects, so a connection
+ * waiting in the handoff queue gets no response at all until an earlier client leaves.
+ * That's why by default maxConnections is the number of worker threads: past it,
+ * clients are told the server is busy rather than left hanging.
+ *
+ * Setters return this, so a config can be built in a single expression:
+ *      new ServerConfig().setWorkerThreads(20).setMaxConnections(100)
+ */
+public class ServerConfig {
+
+    private int workerThreads = 10;
+
+    /**
+     * Accepted connections waiting for a free worker thread, 0 for workerThreads.
+     * With the default maxConnections it only absorbs the short window between a
+     * session releasing its connection permit and its worker thread becoming free
+     */
+    private int handoffQueueSize = 0;
+
+    /**
+     * Connections being served + waiting in the handoff queue, 0 for workerThreads.
+     * Raising it above workerThreads lets connections queue, unserved, for a free thread
+     */
+    private int maxConnections = 0;
+
+    /**
+     * Connections the OS completes the handshake for, before we call accept()
+     */
+    private int acceptBacklog = 50;
+
+    /**
+     * When saturated, stop calling accept() and let new connections wait in the
+     * OS backlog, instead of accepting and immediately rejecting them
+     */
+    private boolean pauseAcceptWhenSaturated = false;
+
+    /**
+     * How long stop() waits for the open sessions to end on their own,
+     * before closing them from the server side
+     */
+    private long shutdownDrainMillis = 5000;
+
+    /**
+     * SO_TIMEOUT, the longest a single read may block waiting for data from
+     * the client, 0 to wait forever
+     */
+    private int readTimeoutMillis = 0;
+
+    /**
+     * Sessions without any message for this long are closed by the server,
+     * 0 to keep idle sessions open
+     */
+    private long idleTimeoutMillis = 300_000;
+
+    /**
+     * Granularity of the idle checks, a session is closed up to this much later
+     * than its idle timeout
+     */
+    private long idleCheckTickMillis = 100;
+
+    /**
+     * SO_KEEPALIVE, lets the OS detect peers which are gone without closing the connection
+     */
+    private boolean tcpKeepAlive = true;
+
+    /**
+     * TCP_KEEPIDLE, seconds of silence before the first keepalive probe, 0 for the OS default
+     * (2 hours on most systems). Ignored where the platform doesn't support it
+     */
+    private int tcpKeepAliveIdleSeconds = 0;
+
+    /**
+     * TCP_NODELAY, sends the small request/response lines right away
+     * instead of waiting to coalesce them (Nagle's algorithm)
+     */
+    private boolean tcpNoDelay = true;
+
+    /**
+     * Threads running the handlers registered as ExecutionMode.BLOCKING,
+     * shared by all the sessions
+     */
+    private int blockingCommandThreads = 4;
+
+    /**
+     * Blocking commands waiting for one of the above threads,
+     * past that the command is answered with a "busy" response
+     */
+    private int blockingCommandQueueSize = 100;
+
+    /**
+     * How long a session waits for a blocking command, before answering
+     * "Command timed out!" and moving on to the next command
+     */
+    private long blockingCommandTimeoutMillis = 10_000;
+
+    /**
+     * Prints every message received to stdout, turn it off for load tests
+     */
+    private boolean logMessages = true;
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public ServerConfig setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+        return this;
+    }
+
+    public int getHandoffQueueSize() {
+        return handoffQueueSize > 0 ? handoffQueueSize : workerThreads;
+    }
+
+    public ServerConfig setHandoffQueueSize(int handoffQueueSize) {
+        this.handoffQueueSize = handoffQueueSize;
+        return this;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections > 0 ? maxConnections : workerThreads;
+    }
+
+    public ServerConfig setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+        return this;
+    }
+
+    public int getAcceptBacklog() {
+        return acceptBacklog;
+    }
+
+    public ServerConfig setAcceptBacklog(int acceptBacklog) {
+        this.acceptBacklog = acceptBacklog;
+        return this;
+    }
+
+    public boolean isPauseAcceptWhenSaturated() {
+        return pauseAcceptWhenSaturated;
+    }
+
+    public ServerConfig setPauseAcceptWhenSaturated(boolean pauseAcceptWhenSaturated) {
+        this.pauseAcceptWhenSaturated = pauseAcceptWhenSaturated;
+        return this;
+    }
+
+    public long getShutdownDrainMillis() {
+        return shutdownDrainMillis;
+    }
+
+    public ServerConfig setShutdownDrainMillis(long shutdownDrainMillis) {
+        this.shutdownDrainMillis = shutdownDrainMillis;
+        return this;
+    }
+
+    public int getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    public ServerConfig setReadTimeoutMillis(int readTimeoutMillis) {
+        this.readTimeoutMillis = readTimeoutMillis;
+        return this;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public ServerConfig setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        return this;
+    }
+
+    public long getIdleCheckTickMillis() {
+        return idleCheckTickMillis;
+    }
+
+    public ServerConfig setIdleCheckTickMillis(long idleCheckTickMillis) {
+        this.idleCheckTickMillis = idleCheckTickMillis;
+        return this;
+    }
+
+    public boolean isTcpKeepAlive() {
+        return tcpKeepAlive;
+    }
+
+    public ServerConfig setTcpKeepAlive(boolean tcpKeepAlive) {
+        this.tcpKeepAlive = tcpKeepAlive;
+        return this;
+    }
+
+    public int getTcpKeepAliveIdleSeconds() {
+        return tcpKeepAliveIdleSeconds;
+    }
+
+    public ServerConfig setTcpKeepAliveIdleSeconds(int tcpKeepAliveIdleSeconds) {
+        this.tcpKeepAliveIdleSeconds = tcpKeepAliveIdleSeconds;
+        return this;
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public ServerConfig setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+        return this;
+    }
+
+    public int getBlockingCommandThreads() {
+        return blockingCommandThreads;
+    }
+
+    public ServerConfig setBlockingCommandThreads(int blockingCommandThreads) {
+        this.blockingCommandThreads = blockingCommandThreads;
+        return this;
+    }
+
+    public int getBlockingCommandQueueSize() {
+        return blockingCommandQueueSize;
+    }
+
+    public ServerConfig setBlockingCommandQueueSize(int blockingCommandQueueSize) {
+        this.blockingCommandQueueSize = blockingCommandQueueSize;
+        return this;
+    }
+
+    public long getBlockingCommandTimeoutMillis() {
+        return blockingCommandTimeoutMillis;
+    }
+
+    public ServerConfig setBlockingCommandTimeoutMillis(long blockingCommandTimeoutMillis) {
+        this.blockingCommandTimeoutMillis = blockingCommandTimeoutMillis;
+        return this;
+    }
+
+    public boolean isLogMessages() {
+        return logMessages;
+    }
+
+    public ServerConfig setLogMessages(boolean logMessages) {
+        this.logMessages = logMessages;
+        return this;
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.clientserver;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for a ServerTCP and the ServerTasks it runs.
+ *
+ * Accepted connections piling up in the executor queue, while the active
+ * threads stay at the pool size, is the sign that the server is saturated.
+ *
+ * Per-command latencies are aggregated here (count, total and max), the
+ * individual commands are available as com.example.server.Command JFR events
+ */
+public class ServerMetrics implements ServerMetricsMXBean {
+
+    private final ThreadPoolExecutor executor;
+    private final LongAdder acceptedConnections = new LongAdder();
+    private final LongAdder rejectedConnections = new LongAdder();
+    private final LongAdder activeConnections = new LongAdder();
+    private final LongAdder idleTimeouts = new LongAdder();
+    private final LongAdder readTimeouts = new LongAdder();
+    private final LongAdder commandCount = new LongAdder();
+    private final LongAdder commandLatencyNanos = new LongAdder();
+    private final LongAccumulator commandLatencyMaxNanos = new LongAccumulator(Long::max, 0);
+
+    ServerMetrics(ThreadPoolExecutor executor) {
+        this.executor = executor;
+    }
+
+    void recordAccept() {
+        this.acceptedConnections.increment();
+    }
+
+    void recordReject() {
+        this.rejectedConnections.increment();
+    }
+
+    void recordSessionStart() {
+        this.activeConnections.increment();
+    }
+
+    void recordSessionEnd() {
+        this.activeConnections.decrement();
+    }
+
+    void recordIdleTimeout() {
+        this.idleTimeouts.increment();
+    }
+
+    void recordReadTimeout() {
+        this.readTimeouts.increment();
+    }
+
+    void recordCommand(long latencyNanos) {
+        this.commandCount.increment();
+        this.commandLatencyNanos.add(latencyNanos);
+        this.commandLatencyMaxNanos.accumulate(latencyNanos);
+    }
+
+    @Override
+    public long getAcceptedConnections() {
+        return this.acceptedConnections.sum();
+    }
+
+    @Override
+    public long getRejectedConnections() {
+        return this.rejectedConnections.sum();
+    }
+
+    @Override
+    public long getActiveConnections() {
+        return this.activeConnections.sum();
+    }
+
+    @Override
+    public long getIdleTimeouts() {
+        return this.idleTimeouts.sum();
+    }
+
+    @Override
+    public long getReadTimeouts() {
+        return this.readTimeouts.sum();
+    }
+
+    @Override
+    public int getExecutorQueueDepth() {
+        return this.executor.getQueue().size();
+    }
+
+    @Override
+    public int getExecutorActiveThreads() {
+        return this.executor.getActiveCount();
+    }
+
+    @Override
+    public long getCommandCount() {
+        return this.commandCount.sum();
+    }
+
+    @Override
+    public long getCommandLatencyTotalNanos() {
+        return this.commandLatencyNanos.sum();
+    }
+
+    @Override
+    public long getCommandLatencyMaxNanos() {
+        return this.commandLatencyMaxNanos.get();
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.clientserver;
+
+/**
+ * JMX view of a ServerTCP, see ServerMetrics
+ */
+public interface ServerMetricsMXBean {
+
+    long getAcceptedConnections();
+
+    long getRejectedConnections();
+
+    long getActiveConnections();
+
+    long getIdleTimeouts();
+
+    long getReadTimeouts();
+
+    int getExecutorQueueDepth();
+
+    int getExecutorActiveThreads();
+
+    long getCommandCount();
+
+    long getCommandLatencyTotalNanos();
+
+    long getCommandLatencyMaxNanos();
+}
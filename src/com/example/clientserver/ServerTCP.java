@@ -1,13 +1,22 @@
 package com.example.clientserver;
 
-import java.io.BufferedReader;
+import com.example.map.StripedMyMap;
+import com.example.metrics.JmxExporter;
+
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
 
 /**
  * HTTP Servers are generally more complex as the HTTP protocol contain instructions on
@@ -16,44 +25,267 @@ import java.util.concurrent.Executors;
  * TCP is connection-oriented (hence reliable) light-weight protocol for implementing
  * simple server programs
  *
+ * Admission control:
+ *      a connection holds a permit from the moment it's accepted until its session ends,
+ *      so at most maxConnections sockets are open at a time. Past that, new connections
+ *      are either rejected with a short "busy" response, or (pauseAcceptWhenSaturated)
+ *      left in the OS accept backlog until a permit frees up.
+ *      Sessions are handed to the worker threads through a bounded queue, which
+ *      rejects as well if it fills up.
+ *      A queued session isn't served until a worker thread frees up, i.e. until an
+ *      earlier client disconnects, see ServerConfig.maxConnections.
  *
  */
 public class ServerTCP {
 
-    private ServerSocket serverSocket;
+    private static final String BUSY_RESPONSE = "Server busy. Try again later!\n";
 
     /**
-     * ThreadPoolExecutor to handle 10 clients at a time
+     * How often the accept loop re-checks whether the server was stopped,
+     * while it's paused waiting for a free connection permit
      */
-    private ExecutorService executorService = Executors.newFixedThreadPool(10);
+    private static final long PAUSED_ACCEPT_POLL_MILLIS = 100;
+
+    private final ServerConfig config;
+
+    private volatile ServerSocket serverSocket;
+    private volatile boolean running;
+
+    /**
+     * ThreadPoolExecutor to handle config.workerThreads clients at a time,
+     * with a bounded queue for the ones waiting for a thread
+     */
+    private final ThreadPoolExecutor executorService;
+
+    /**
+     * Runs the handlers registered as ExecutionMode.BLOCKING, off the session threads
+     */
+    private final ThreadPoolExecutor blockingCommandExecutor;
+
+    private final CommandRegistry commandRegistry;
+
+    private final Semaphore connectionPermits;
+
+    /**
+     * Sessions accepted and not yet ended (running or queued),
+     * to be closed by stop() if they don't end on their own
+     */
+    private final Set<ServerTask> openSessions = ConcurrentHashMap.newKeySet();
+
+    private final ServerMetrics metrics;
+
+    /**
+     * Name the metrics are registered under while the server is up, unregistered by stop()
+     */
+    private volatile ObjectName jmxName;
+
+    /**
+     * null when idle sessions are kept open
+     */
+    private final IdleTimerWheel idleTimerWheel;
+
+    public ServerTCP() {
+        this(new ServerConfig());
+    }
+
+    public ServerTCP(ServerConfig config) {
+        this(config, CommandRegistry.withDefaultCommands());
+    }
+
+    /**
+     * @param commandRegistry - the commands supported by the server, more can be registered
+     *                        through getCommandRegistry() until startServer() is called
+     */
+    public ServerTCP(ServerConfig config, CommandRegistry commandRegistry) {
+        this.config = config;
+        this.commandRegistry = commandRegistry;
+        this.executorService = new ThreadPoolExecutor(config.getWorkerThreads(), config.getWorkerThreads(),
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(config.getHandoffQueueSize()));
+        this.blockingCommandExecutor = new ThreadPoolExecutor(config.getBlockingCommandThreads(),
+                config.getBlockingCommandThreads(), 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(config.getBlockingCommandQueueSize()));
+        this.connectionPermits = new Semaphore(config.getMaxConnections());
+        this.metrics = new ServerMetrics(this.executorService);
+        this.idleTimerWheel = config.getIdleTimeoutMillis() > 0 ?
+                new IdleTimerWheel(config.getIdleTimeoutMillis(), config.getIdleCheckTickMillis()) : null;
+    }
 
     public void startServer(int port) {
         try {
-            this.serverSocket = new ServerSocket(port);
+            this.serverSocket = new ServerSocket(port, this.config.getAcceptBacklog());
+            this.running = true;
+            this.jmxName = JmxExporter.register("ServerTCP", String.valueOf(port), this.metrics);
+
+            // the first use of a JFR event class is slow (it gets instrumented when loaded), pay for it
+            // now rather than in the first command, where it could exceed a short idle timeout
+            new CommandEvent().shouldCommit();
+
+            while(this.running) {  // keep the server up until stop() is called so it can listen to requests
+                boolean permitAcquired = this.config.isPauseAcceptWhenSaturated() && awaitConnectionPermit();
+                if (!this.running) {
+                    break;
+                }
 
-            while(true) {  // keep the server up endlessly so it can listen to requests
                 // blocking call until a client opens a connection to this Server
                 Socket clientSocket = this.serverSocket.accept();
+                this.metrics.recordAccept();
+
+                if (!permitAcquired && !this.connectionPermits.tryAcquire()) {
+                    reject(clientSocket);
+                    continue;
+                }
 
                 // Once the connection is made, submit it to a new thread for processing
-                executorService.submit(new ServerTask(clientSocket));
+                ServerTask task = new ServerTask(clientSocket, this);
+                this.openSessions.add(task);
+                try {
+                    executorService.submit(task);
+                } catch (RejectedExecutionException e) {
+                    sessionEnded(task);
+                    reject(clientSocket);
+                }
             }
-
-//            this.stop();
         } catch (IOException e) {
+            if (!this.running) {
+                return;  // the server socket was closed by stop(), to unblock accept()
+            }
             e.printStackTrace();
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Stops accepting connections and drains the open sessions: idle sessions are ended
+     * right away, the ones running a command are given config.shutdownDrainMillis to
+     * finish it, after which they're closed from the server side
+     */
+    public void stop() throws IOException {
+        if (!this.running) {
+            return;
+        }
+        this.running = false;
+        this.serverSocket.close();  // unblocks the accept() in startServer
+        this.executorService.shutdown();  // sessions already queued still get to run
+
+        // sessions waiting for their client's next message end right away (their read sees
+        // end-of-stream), a session in the middle of a command still sends its response
+        // and ends after it, so only the in-flight commands are waited for
+        for (ServerTask session : this.openSessions) {
+            session.shutdownInput();
+        }
 
-    private void stop() throws IOException {
-        this.executorService.shutdown();
-        this.serverSocket.close();
+        try {
+            if (!this.executorService.awaitTermination(this.config.getShutdownDrainMillis(), TimeUnit.MILLISECONDS)) {
+                for (ServerTask session : this.openSessions) {
+                    session.close();
+                }
+                this.executorService.awaitTermination(this.config.getShutdownDrainMillis(), TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.executorService.shutdownNow();
+        } finally {
+            this.blockingCommandExecutor.shutdown();
+            if (this.idleTimerWheel != null) {
+                this.idleTimerWheel.stop();
+            }
+            if (this.jmxName != null) {
+                JmxExporter.unregister(this.jmxName);
+                this.jmxName = null;
+            }
+        }
+    }
+
+    public ServerConfig getConfig() {
+        return this.config;
+    }
+
+    public CommandRegistry getCommandRegistry() {
+        return this.commandRegistry;
+    }
+
+    ThreadPoolExecutor getBlockingCommandExecutor() {
+        return this.blockingCommandExecutor;
+    }
+
+    /**
+     * @return the wheel tracking idle sessions, null if idle sessions are kept open
+     */
+    IdleTimerWheel getIdleTimerWheel() {
+        return this.idleTimerWheel;
+    }
+
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    /**
+     * Accept/connection counters, executor saturation and command latencies,
+     * exported via JMX as com.example:type=ServerTCP,name="port"
+     */
+    public ServerMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Called by a ServerTask once its connection is closed
+     */
+    void sessionEnded(ServerTask task) {
+        if (this.openSessions.remove(task)) {
+            this.connectionPermits.release();
+        }
+    }
+
+    /**
+     * @return true once a permit is acquired, false if the server was stopped meanwhile
+     */
+    private boolean awaitConnectionPermit() {
+        try {
+            while (this.running) {
+                if (this.connectionPermits.tryAcquire(PAUSED_ACCEPT_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    if (this.running) {
+                        return true;
+                    }
+                    this.connectionPermits.release();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.running = false;
+        }
+        return false;
+    }
+
+    /**
+     * Fast rejection, the client gets a response right away instead of
+     * timing out while its socket sits in a queue
+     */
+    private void reject(Socket clientSocket) {
+        this.metrics.recordReject();
+        try (OutputStream out = clientSocket.getOutputStream()) {
+            out.write(BUSY_RESPONSE.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // the client is gone already, nothing left to tell it
+        } finally {
+            try {
+                clientSocket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
     }
 
     public static void main(String [] args) {
         ServerTCP server = new ServerTCP();
+        KeyValueCommands.register(server.getCommandRegistry(), new StripedMyMap<>());
+        new PubSubBroker().registerCommands(server.getCommandRegistry());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.stop();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }));
         server.startServer(4567);
     }
 
@@ -5,59 +5,371 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import jdk.net.ExtendedSocketOptions;
 
 public class ServerTask implements Runnable {
 
+    /**
+     * Set on a blocking-command thread while it runs a handler, see runBlockingCommand()
+     */
+    private static final ThreadLocal<ReplyGuard> BLOCKING_REPLY_GUARD = new ThreadLocal<>();
+
     private Socket clientSocket;
     private PrintWriter out;
     private BufferedReader in;
+    private final ServerTCP server;
+    private final ServerMetrics metrics;
+
+    /**
+     * Maintained for the IdleTimerWheel: updating the activity time is all
+     * a message costs, the wheel checks it lazily when the session's slot is due
+     */
+    private volatile long lastActivityNanos;
+    private volatile int wheelSlot = -1;
+    private volatile boolean wheelCancelled;
 
-    public ServerTask(Socket clientSocket) {
+    private final List<Runnable> closeListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Set once the connection is set up for reading, guarded by this. Until then
+     * shutdownInput() leaves the socket alone, see run()
+     */
+    private boolean inputReady;
+
+    public ServerTask(Socket clientSocket, ServerTCP server) {
         this.clientSocket = clientSocket;
+        this.server = server;
+        this.metrics = server.getMetrics();
     }
 
     private void setupConnection() throws IOException {
+        ServerConfig config = this.server.getConfig();
+        this.clientSocket.setTcpNoDelay(config.isTcpNoDelay());
+        this.clientSocket.setKeepAlive(config.isTcpKeepAlive());
+        if (config.isTcpKeepAlive() && config.getTcpKeepAliveIdleSeconds() > 0
+                && this.clientSocket.supportedOptions().contains(ExtendedSocketOptions.TCP_KEEPIDLE)) {
+            this.clientSocket.setOption(ExtendedSocketOptions.TCP_KEEPIDLE, config.getTcpKeepAliveIdleSeconds());
+        }
+        this.clientSocket.setSoTimeout(config.getReadTimeoutMillis());
+
         this.out = new PrintWriter(this.clientSocket.getOutputStream(), true);
         this.in = new BufferedReader(new InputStreamReader(this.clientSocket.getInputStream()));
     }
 
     @Override
     public void run() {
+        this.metrics.recordSessionStart();
         try {
-            this.setupConnection();
+            if (this.clientSocket.isClosed()) {
+                return;  // closed by ServerTCP.stop() while waiting in the handoff queue
+            }
+
+            // checked against stop() under the lock shutdownInput() takes: either the server
+            // is still running and stop() will shut down the input of the ready session, or
+            // the session was still queued when the server stopped and ends right here
+            synchronized (this) {
+                if (!this.server.isRunning()) {
+                    this.out = new PrintWriter(this.clientSocket.getOutputStream(), true);
+                    out.println("Server shutting down. Ending session!");
+                    return;
+                }
+                this.setupConnection();
+                this.inputReady = true;
+            }
+            this.recordActivity();
+            IdleTimerWheel idleTimerWheel = this.server.getIdleTimerWheel();
+            if (idleTimerWheel != null) {
+                idleTimerWheel.schedule(this);
+            }
             String message;
 
-            // in.readLine() is blocking until server receives a message
+            // in.readLine() is blocking until server receives a message,
+            // or until the read timeout (SO_TIMEOUT) expires
             while ((message = in.readLine()) != null) {
-                boolean quit = processMessage(message);
+                this.recordActivity();
+                boolean quit = timedProcessMessage(message);
                 if (quit) {
                     break;
                 }
+
+                // the server is draining, end the session once the current command is done
+                if (!this.server.isRunning()) {
+                    out.println("Server shutting down. Ending session!");
+                    break;
+                }
             }
 
             this.teardownConnection();
+        } catch (SocketTimeoutException e) {
+            this.metrics.recordReadTimeout();
+            out.println("Read timeout. Ending session!");
         } catch (IOException e) {
+            if (this.clientSocket.isClosed()) {
+                return;  // closed from the server side, by ServerTCP.stop() or for idleness
+            }
             e.printStackTrace();
             throw new RuntimeException(e);
+        } finally {
+            IdleTimerWheel idleTimerWheel = this.server.getIdleTimerWheel();
+            if (idleTimerWheel != null) {
+                idleTimerWheel.cancel(this);
+            }
+            this.close();
+            for (Runnable closeListener : this.closeListeners) {
+                closeListener.run();
+            }
+            this.metrics.recordSessionEnd();
+            this.server.sessionEnded(this);
         }
 
     }
 
-    private boolean processMessage(String message) {
-        System.out.println("ServerThreadID: " + Thread.currentThread().getId() + ", Message from Client: " + message);
-        boolean quit = false;
-        if ("ping".equalsIgnoreCase(message)) {
-            out.println("PONG");
+    private boolean timedProcessMessage(String message) {
+        CommandEvent event = new CommandEvent();
+        event.begin();
+        long startNanos = System.nanoTime();
+
+        CommandRegistry.Command command = this.server.getCommandRegistry().lookup(message);
+        boolean quit = processMessage(message, command);
+
+        this.metrics.recordCommand(System.nanoTime() - startNanos);
+        event.end();
+        if (event.shouldCommit()) {
+            event.command = command != null ? command.getOpcode() : "<unrecognized>";
+            event.commit();
         }
-        else if("!".equals(message)) {
-            out.println("Abort signal received. Ending session!");
-            quit = true;
+
+        return quit;
+    }
+
+    private boolean processMessage(String message, CommandRegistry.Command command) {
+        if (this.server.getConfig().isLogMessages()) {
+            System.out.println("ServerThreadID: " + Thread.currentThread().getId() + ", Message from Client: " + message);
         }
-        else {
-            out.println("Unrecognized command!");
+        if (command == null) {
+            reply("Unrecognized command!");
+            return false;
         }
 
-        return quit;
+        String arguments = CommandRegistry.arguments(message);
+        if (command.getMode() == CommandRegistry.ExecutionMode.BLOCKING) {
+            return runBlockingCommand(command, arguments);
+        }
+
+        try {
+            return command.getHandler().handle(this, arguments);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            reply("Command failed!");
+            return false;
+        }
+    }
+
+    /**
+     * Hands the command to the server's pool of blocking-command threads and waits
+     * for it, up to the blocking-command timeout, so responses still go out in the
+     * order the commands were received.
+     *
+     * The handler replies through a ReplyGuard: once the session has given up on the
+     * command (timeout or failure), whatever the handler still tries to reply is
+     * dropped, so the client never gets a response too many
+     */
+    private boolean runBlockingCommand(CommandRegistry.Command command, String arguments) {
+        ReplyGuard guard = new ReplyGuard(this);
+        Future<Boolean> result;
+        try {
+            result = this.server.getBlockingCommandExecutor().submit(() -> {
+                BLOCKING_REPLY_GUARD.set(guard);
+                try {
+                    return command.getHandler().handle(this, arguments);
+                } finally {
+                    BLOCKING_REPLY_GUARD.remove();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            reply("Server busy. Try again later!");
+            return false;
+        }
+
+        try {
+            return result.get(this.server.getConfig().getBlockingCommandTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            result.cancel(true);
+            giveUp(guard, "Command timed out!");
+            return false;
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+            giveUp(guard, "Command failed!");
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.cancel(true);
+            guard.cancel();
+            return true;
+        }
+    }
+
+    /**
+     * Disables the handler's replies, and sends the response in its place,
+     * unless the handler already replied before timing out/failing
+     */
+    private void giveUp(ReplyGuard guard, String response) {
+        if (!guard.cancel()) {
+            reply(response);
+        }
+    }
+
+    /**
+     * Sends a response line to the client, safe to call from handlers running off the session's thread
+     */
+    public void reply(String response) {
+        ReplyGuard guard = BLOCKING_REPLY_GUARD.get();
+        if (guard == null || guard.session != this) {
+            out.println(response);
+            return;
+        }
+
+        synchronized (guard) {
+            if (!guard.cancelled) {
+                guard.replied = true;
+                out.println(response);
+            }
+        }
+    }
+
+    /**
+     * Sends several lines at once, in a single write to the socket. Like reply(),
+     * safe to call from other threads, the lines won't interleave with a reply.
+     *
+     * Counts as activity for the idle timeout, so a session only receiving what the
+     * server pushes to it (e.g. a subscriber) isn't closed as idle. A client gone
+     * silently is still detected by TCP keepalive, or by the writes failing
+     *
+     * @param lines - each line terminated by '\n'
+     */
+    public void write(String lines) {
+        this.recordActivity();
+        ReplyGuard guard = BLOCKING_REPLY_GUARD.get();
+        if (guard == null || guard.session != this) {
+            out.print(lines);
+            out.flush();
+            return;
+        }
+
+        synchronized (guard) {
+            if (!guard.cancelled) {
+                guard.replied = true;
+                out.print(lines);
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * Tracks the replies of one BLOCKING command, set on the thread running its handler
+     */
+    private static final class ReplyGuard {
+        private final ServerTask session;
+        private boolean replied;
+        private boolean cancelled;
+
+        ReplyGuard(ServerTask session) {
+            this.session = session;
+        }
+
+        /**
+         * @return true if the handler replied before being cancelled
+         */
+        synchronized boolean cancel() {
+            this.cancelled = true;
+            return this.replied;
+        }
+    }
+
+    /**
+     * Runs the listener on the session's thread once the session has ended,
+     * to release whatever a command attached to the session
+     */
+    public void onClose(Runnable listener) {
+        this.closeListeners.add(listener);
+    }
+
+    /**
+     * Stops reading from the client: a pending or next in.readLine() returns null,
+     * while responses can still be written. A session which hasn't started yet
+     * sees the server stopped when it does, and ends without reading
+     */
+    synchronized void shutdownInput() {
+        if (!this.inputReady) {
+            return;
+        }
+        try {
+            if (!this.clientSocket.isClosed() && !this.clientSocket.isInputShutdown()) {
+                this.clientSocket.shutdownInput();
+            }
+        } catch (IOException e) {
+            // the connection is already gone, the session will end on its own
+        }
+    }
+
+    /**
+     * Closes the connection from the server side, which also unblocks
+     * the in.readLine() of the session, if it's waiting for the client
+     */
+    void close() {
+        try {
+            this.clientSocket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Called from the IdleTimerWheel thread. Only the socket is closed, writing a
+     * goodbye here could block the wheel on a client which stopped reading
+     */
+    void closeIdle() {
+        if (this.clientSocket.isClosed()) {
+            return;
+        }
+        this.metrics.recordIdleTimeout();
+        this.close();
+    }
+
+    /**
+     * Restarts the idle time of the session
+     */
+    void recordActivity() {
+        this.lastActivityNanos = System.nanoTime();
+    }
+
+    long getLastActivityNanos() {
+        return this.lastActivityNanos;
+    }
+
+    int getWheelSlot() {
+        return this.wheelSlot;
+    }
+
+    void setWheelSlot(int wheelSlot) {
+        this.wheelSlot = wheelSlot;
+    }
+
+    boolean isWheelCancelled() {
+        return this.wheelCancelled;
+    }
+
+    void setWheelCancelled() {
+        this.wheelCancelled = true;
     }
 
     public void teardownConnection() throws IOException {
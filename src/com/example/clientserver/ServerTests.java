@@ -0,0 +1,501 @@
+package com.example.clientserver;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+public class ServerTests {
+
+    private static final int PORT = 4569;
+
+    public static void main(String [] args) throws Exception {
+        runServerTests();
+    }
+
+    private static void runServerTests() throws Exception {
+        test_registry_lookup_ignores_case();
+        test_registry_register_replaces();
+        test_registry_resize();
+        test_blocking_command_late_reply();
+        test_subscriber_receiving_pushes_not_idle();
+        test_stalled_subscribers_dont_block_others();
+        test_reject_past_max_connections();
+        test_pause_accept_when_saturated();
+        test_stop_with_queued_sessions();
+        test_idle_session_closed();
+        test_read_timeout();
+        test_idle_wheel_cancel_while_ticking();
+        test_client_rejects_malformed_keys();
+    }
+
+    private static void test_registry_lookup_ignores_case() {
+        CommandRegistry registry = CommandRegistry.withDefaultCommands();
+
+        boolean validResponse = registry.lookup("ping") != null
+                && registry.lookup("PING") != null
+                && registry.lookup("PiNg with arguments") != null;
+        print_test_result(validResponse, "CommandRegistry lookup() ignores case of the opcode");
+
+        validResponse = registry.lookup("pingx") == null
+                && registry.lookup("pin") == null
+                && registry.lookup("") == null;
+        print_test_result(validResponse, "CommandRegistry lookup() for unknown opcodes");
+
+        validResponse = CommandRegistry.arguments("PUT key some value").equals("key some value")
+                && CommandRegistry.arguments("PING").isEmpty();
+        print_test_result(validResponse, "CommandRegistry arguments() after the opcode");
+    }
+
+    private static void test_registry_register_replaces() {
+        CommandRegistry registry = CommandRegistry.withDefaultCommands();
+        CommandHandler replacement = (session, arguments) -> false;
+
+        registry.register("PING", replacement, CommandRegistry.ExecutionMode.BLOCKING);
+
+        CommandRegistry.Command command = registry.lookup("ping");
+        boolean validResponse = command.getHandler() == replacement
+                && command.getMode() == CommandRegistry.ExecutionMode.BLOCKING;
+        print_test_result(validResponse, "CommandRegistry register() replaces the handler of an existing opcode");
+    }
+
+    private static void test_registry_resize() {
+        CommandRegistry registry = new CommandRegistry();
+        CommandHandler[] handlers = new CommandHandler[100];
+
+        // well past the initial table size, forcing several resizes
+        for (int i = 0; i < handlers.length; i++) {
+            handlers[i] = (session, arguments) -> false;
+            registry.register("cmd" + i, handlers[i]);
+        }
+
+        boolean validResponse = true;
+        for (int i = 0; i < handlers.length; i++) {
+            CommandRegistry.Command command = registry.lookup("CMD" + i + " arg");
+            validResponse &= command != null && command.getHandler() == handlers[i];
+        }
+        print_test_result(validResponse, "CommandRegistry lookup() after the table was resized");
+    }
+
+    private static void test_blocking_command_late_reply() throws Exception {
+        // the default config has no read timeout, the blocking-command timeout applies regardless
+        ServerTCP server = new ServerTCP(new ServerConfig()
+                .setBlockingCommandTimeoutMillis(200)
+                .setLogMessages(false));
+        server.getCommandRegistry().register("slow", (session, arguments) -> {
+            sleepIgnoringInterrupts(500);
+            session.reply("too late");  // after the timeout, must not reach the client
+            return false;
+        }, CommandRegistry.ExecutionMode.BLOCKING);
+        Thread serverThread = startServer(server);
+
+        try (Socket socket = new Socket("localhost", PORT)) {
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+
+            out.println("slow");
+            boolean validResponse = "Command timed out!".equals(in.readLine());
+            print_test_result(validResponse, "BLOCKING command times out without a read timeout");
+
+            // the handler's late reply happens meanwhile
+            TimeUnit.MILLISECONDS.sleep(500);
+            out.println("ping");
+            validResponse = "PONG".equals(in.readLine());
+            print_test_result(validResponse, "BLOCKING command's reply after its timeout is dropped");
+        } finally {
+            server.stop();
+            serverThread.join();
+        }
+    }
+
+    private static void test_subscriber_receiving_pushes_not_idle() throws Exception {
+        ServerTCP server = new ServerTCP(new ServerConfig()
+                .setIdleTimeoutMillis(300)
+                .setIdleCheckTickMillis(20)
+                .setLogMessages(false));
+        new PubSubBroker().registerCommands(server.getCommandRegistry());
+        Thread serverThread = startServer(server);
+
+        Client subscriber = new Client();
+        Client publisher = new Client();
+        try {
+            subscriber.setupConnection("localhost", PORT);
+            subscriber.subscribe("news");
+            publisher.setupConnection("localhost", PORT);
+
+            // the subscriber never sends anything, for more than 3 idle timeouts
+            boolean validResponse = true;
+            for (int i=0; i<10; i++) {
+                validResponse &= publisher.publish("news", "m" + i) == 1;
+                validResponse &= ("news m" + i).equals(subscriber.nextMessage());
+                TimeUnit.MILLISECONDS.sleep(100);
+            }
+            validResponse &= server.getMetrics().getIdleTimeouts() == 0;
+            print_test_result(validResponse, "subscriber receiving messages isn't closed as idle");
+        } finally {
+            subscriber.tearDownClient();
+            publisher.tearDownClient();
+            server.stop();
+            serverThread.join();
+        }
+    }
+
+    private static void test_stalled_subscribers_dont_block_others() throws Exception {
+        ServerTCP server = new ServerTCP(new ServerConfig().setLogMessages(false));
+        // as many stalled subscribers as writer threads, a buffer large enough that the
+        // reading subscriber doesn't drop anything while the stalls are being detected
+        PubSubBroker broker = new PubSubBroker(10_000, PubSubBroker.SlowConsumerPolicy.DROP_OLDEST, 2, 200);
+        broker.registerCommands(server.getCommandRegistry());
+        Thread serverThread = startServer(server);
+
+        int messages = 5000;
+        StringBuilder payload = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            payload.append('x');
+        }
+
+        Socket[] stalled = new Socket[2];
+        Client reader = new Client();
+        Client publisher = new Client();
+        AtomicInteger received = new AtomicInteger();
+        Thread readerThread = new Thread(() -> {
+            String message;
+            while (received.get() < messages && (message = reader.nextMessage()) != null) {
+                if (!message.startsWith("news " + received.get() + " ")) {
+                    break;  // out of order or missing
+                }
+                received.incrementAndGet();
+            }
+        });
+        try {
+            // subscribed, then never read anything, with small buffers to fill up quickly
+            for (int i = 0; i < stalled.length; i++) {
+                stalled[i] = new Socket();
+                stalled[i].setReceiveBufferSize(4096);
+                stalled[i].connect(new InetSocketAddress("localhost", PORT));
+                new PrintWriter(stalled[i].getOutputStream(), true).println("SUBSCRIBE news");
+            }
+            reader.setupConnection("localhost", PORT);
+            reader.subscribe("news");
+            publisher.setupConnection("localhost", PORT);
+            // the reader gets every ping, until the stalled subscribers are subscribed as well
+            int pings = 0;
+            boolean validResponse = false;
+            while (!validResponse && pings < 100) {
+                pings++;
+                validResponse = publisher.publish("news", "ping") == 3;
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+            for (int i = 0; i < pings; i++) {
+                reader.nextMessage();
+            }
+            readerThread.start();
+
+            for (int i = 0; i < messages; i++) {
+                publisher.publish("news", i + " " + payload);
+            }
+            readerThread.join(10_000);
+
+            validResponse &= received.get() == messages
+                    && broker.getDisconnectedSubscribers() == 2;
+            print_test_result(validResponse, "subscribers stuck in a write are disconnected, the others still served");
+        } finally {
+            for (Socket socket : stalled) {
+                if (socket != null) {
+                    socket.close();
+                }
+            }
+            publisher.tearDownClient();
+            reader.tearDownClient();
+            readerThread.join();
+            broker.stop();
+            server.stop();
+            serverThread.join();
+        }
+    }
+
+    private static void test_reject_past_max_connections() throws Exception {
+        ServerTCP server = new ServerTCP(new ServerConfig()
+                .setWorkerThreads(1)
+                .setLogMessages(false));
+        Thread serverThread = startServer(server);
+
+        try (Socket first = new Socket("localhost", PORT);
+             Socket second = new Socket("localhost", PORT)) {
+            PrintWriter firstOut = new PrintWriter(first.getOutputStream(), true);
+            BufferedReader firstIn = new BufferedReader(new InputStreamReader(first.getInputStream()));
+            BufferedReader secondIn = new BufferedReader(new InputStreamReader(second.getInputStream()));
+
+            // maxConnections defaults to the single worker thread, taken by the first client
+            boolean validResponse = "Server busy. Try again later!".equals(secondIn.readLine())
+                    && secondIn.readLine() == null
+                    && server.getMetrics().getRejectedConnections() == 1;
+
+            firstOut.println("ping");
+            validResponse &= "PONG".equals(firstIn.readLine());
+            print_test_result(validResponse, "connection past maxConnections is rejected right away");
+        } finally {
+            server.stop();
+            serverThread.join();
+        }
+    }
+
+    private static void test_pause_accept_when_saturated() throws Exception {
+        ServerTCP server = new ServerTCP(new ServerConfig()
+                .setWorkerThreads(1)
+                .setPauseAcceptWhenSaturated(true)
+                .setLogMessages(false));
+        Thread serverThread = startServer(server);
+
+        try (Socket second = new Socket()) {
+            Socket first = new Socket("localhost", PORT);
+            PrintWriter firstOut = new PrintWriter(first.getOutputStream(), true);
+            BufferedReader firstIn = new BufferedReader(new InputStreamReader(first.getInputStream()));
+            firstOut.println("ping");
+            boolean validResponse = "PONG".equals(firstIn.readLine());
+
+            // the OS completes the handshake, the server doesn't accept() it yet
+            second.connect(new InetSocketAddress("localhost", PORT));
+            second.setSoTimeout(300);
+            PrintWriter secondOut = new PrintWriter(second.getOutputStream(), true);
+            BufferedReader secondIn = new BufferedReader(new InputStreamReader(second.getInputStream()));
+            secondOut.println("ping");
+            try {
+                secondIn.readLine();
+                validResponse = false;
+            } catch (SocketTimeoutException e) {
+                // waiting in the backlog, as expected
+            }
+
+            // the first client leaving frees the permit, the second is accepted and served
+            first.close();
+            second.setSoTimeout(2000);
+            validResponse &= "PONG".equals(secondIn.readLine())
+                    && server.getMetrics().getRejectedConnections() == 0;
+            print_test_result(validResponse, "saturated server pauses accept() instead of rejecting");
+        } finally {
+            server.stop();
+            serverThread.join();
+        }
+    }
+
+    private static void test_stop_with_queued_sessions() throws Exception {
+        ServerTCP server = new ServerTCP(new ServerConfig()
+                .setWorkerThreads(1)
+                .setHandoffQueueSize(2)
+                .setMaxConnections(3)
+                .setLogMessages(false));
+        server.getCommandRegistry().register("slow", (session, arguments) -> {
+            sleepIgnoringInterrupts(300);
+            session.reply("done");
+            return false;
+        });
+        Thread serverThread = startServer(server);
+
+        try (Socket running = new Socket("localhost", PORT);
+             Socket queued1 = new Socket("localhost", PORT);
+             Socket queued2 = new Socket("localhost", PORT)) {
+            PrintWriter runningOut = new PrintWriter(running.getOutputStream(), true);
+            BufferedReader runningIn = new BufferedReader(new InputStreamReader(running.getInputStream()));
+            runningOut.println("ping");
+            boolean validResponse = "PONG".equals(runningIn.readLine());
+            validResponse &= waitFor(() -> server.getMetrics().getExecutorQueueDepth() == 2, 2000);
+
+            // stop while a command is in flight and two sessions wait for the only worker thread
+            runningOut.println("slow");
+            TimeUnit.MILLISECONDS.sleep(50);
+            long stopStartNanos = System.nanoTime();
+            server.stop();
+            long stopMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - stopStartNanos);
+
+            validResponse &= "done".equals(runningIn.readLine())
+                    && "Server shutting down. Ending session!".equals(runningIn.readLine())
+                    && stopMillis < server.getConfig().getShutdownDrainMillis();
+            print_test_result(validResponse, "stop() lets the in-flight command finish");
+
+            validResponse = true;
+            for (Socket queued : new Socket[] {queued1, queued2}) {
+                BufferedReader queuedIn = new BufferedReader(new InputStreamReader(queued.getInputStream()));
+                validResponse &= "Server shutting down. Ending session!".equals(queuedIn.readLine())
+                        && queuedIn.readLine() == null;
+            }
+            print_test_result(validResponse, "stop() ends the queued sessions with a response");
+        } finally {
+            server.stop();
+            serverThread.join();
+        }
+    }
+
+    private static void test_idle_session_closed() throws Exception {
+        ServerTCP server = new ServerTCP(new ServerConfig()
+                .setIdleTimeoutMillis(200)
+                .setIdleCheckTickMillis(20)
+                .setLogMessages(false));
+        Thread serverThread = startServer(server);
+
+        try (Socket socket = new Socket("localhost", PORT)) {
+            socket.setSoTimeout(2000);
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+
+            out.println("ping");
+            boolean validResponse = "PONG".equals(in.readLine());
+
+            // nothing sent after that, the wheel closes the connection without a goodbye
+            long startNanos = System.nanoTime();
+            validResponse &= in.readLine() == null;
+            long closedAfterMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            validResponse &= closedAfterMillis >= 150
+                    && waitFor(() -> server.getMetrics().getIdleTimeouts() == 1, 1000);
+            print_test_result(validResponse, "idle session closed after the idle timeout");
+        } finally {
+            server.stop();
+            serverThread.join();
+        }
+    }
+
+    private static void test_read_timeout() throws Exception {
+        ServerTCP server = new ServerTCP(new ServerConfig()
+                .setReadTimeoutMillis(200)
+                .setIdleTimeoutMillis(0)
+                .setLogMessages(false));
+        Thread serverThread = startServer(server);
+
+        try (Socket socket = new Socket("localhost", PORT)) {
+            socket.setSoTimeout(2000);
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+
+            out.println("ping");
+            boolean validResponse = "PONG".equals(in.readLine())
+                    && "Read timeout. Ending session!".equals(in.readLine())
+                    && in.readLine() == null
+                    && server.getMetrics().getReadTimeouts() == 1;
+            print_test_result(validResponse, "session ended by the read timeout (SO_TIMEOUT)");
+        } finally {
+            server.stop();
+            serverThread.join();
+        }
+    }
+
+    private static void test_idle_wheel_cancel_while_ticking() throws Exception {
+        // sessions which are never run, only tracked by the wheel
+        ServerTCP server = new ServerTCP(new ServerConfig().setLogMessages(false));
+
+        // the interleaving of the race, step by step: the ticker took the session out of
+        // its due slot, cancel() runs and finds nothing to remove, then the ticker re-schedules it
+        IdleTimerWheel idleWheel = new IdleTimerWheel(60_000, 60_000);  // never ticks during the test
+        ServerTask session = new ServerTask(new Socket(), server);
+        session.recordActivity();
+        idleWheel.schedule(session);
+        idleWheel.cancel(session);
+        idleWheel.scheduleIn(session, TimeUnit.SECONDS.toNanos(1));
+        boolean validResponse = idleWheel.trackedCount() == 0;
+        idleWheel.stop();
+
+        // and for real, cancelling while a fast ticker keeps moving the (active) sessions to later slots
+        IdleTimerWheel wheel = new IdleTimerWheel(50, 1);
+        ServerTask[] sessions = new ServerTask[2000];
+        for (int i = 0; i < sessions.length; i++) {
+            sessions[i] = new ServerTask(new Socket(), server);
+        }
+        AtomicBoolean touching = new AtomicBoolean(true);
+        Thread toucher = new Thread(() -> {
+            while (touching.get()) {
+                for (ServerTask touched : sessions) {
+                    touched.recordActivity();
+                }
+            }
+        });
+        toucher.start();
+
+        try {
+            for (ServerTask scheduled : sessions) {
+                scheduled.recordActivity();
+                wheel.schedule(scheduled);
+            }
+            TimeUnit.MILLISECONDS.sleep(100);
+            for (ServerTask cancelled : sessions) {
+                wheel.cancel(cancelled);
+            }
+            validResponse &= wheel.trackedCount() == 0;
+            print_test_result(validResponse, "IdleTimerWheel cancel() while the ticker reschedules");
+        } finally {
+            touching.set(false);
+            toucher.join();
+            wheel.stop();
+        }
+    }
+
+    private static void test_client_rejects_malformed_keys() {
+        // rejected before anything is sent, no connection needed
+        Client client = new Client();
+        List<Runnable> malformed = Arrays.asList(
+                () -> client.get(""),
+                () -> client.get("key other"),
+                () -> client.del("key\nPUT injected value"),
+                () -> client.put("key", "value\r\nDEL other"),
+                () -> client.mget(Arrays.asList("key", "other key")),
+                () -> client.pipelinedGet(Arrays.asList("key", "key\tother")),
+                () -> client.pipelinedPut(Arrays.asList("key"), Arrays.asList("line\nbreak")));
+
+        boolean validResponse = true;
+        for (Runnable request : malformed) {
+            try {
+                request.run();
+                validResponse = false;
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        print_test_result(validResponse, "Client rejects keys and values which would break the line protocol");
+    }
+
+    static Thread startServer(ServerTCP server) throws InterruptedException {
+        Thread serverThread = new Thread(() -> server.startServer(PORT), "test-server");
+        serverThread.start();
+        while (!server.isRunning()) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        return serverThread;
+    }
+
+    private static boolean waitFor(BooleanSupplier condition, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        return true;
+    }
+
+    private static void sleepIgnoringInterrupts(long millis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        while (System.nanoTime() < deadline) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(deadline - System.nanoTime());
+            } catch (InterruptedException e) {
+                // a handler ignoring its cancellation
+            }
+        }
+    }
+
+    private static void print_test_result(boolean validResponse, String functionality) {
+        if (validResponse) {
+            System.out.println(functionality + " - assertion passed");
+        }
+        else {
+            System.out.println(functionality + " - assertion FAILED!!");
+        }
+    }
+}
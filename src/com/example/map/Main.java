@@ -1,6 +1,8 @@
 package com.example.map;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 public class Main {
@@ -23,6 +25,8 @@ public class Main {
         test_put_and_remove_resizing();
         test_keySet(myMap);
         test_entrySet(myMap);
+        test_metrics();
+        test_striped_concurrent_put();
     }
 
     private static void test_containsKey(MyMap<String, String> myMap) {
@@ -109,9 +113,15 @@ public class Main {
 
         print_test_result(myMap.getBucketsCount() == 8, "put() buckets count doubled with additional item");
 
-        // removing the additional Key-value - buckets should be back to 4
+        // removing the additional Key-value - buckets stay at 8, no shrinking right after expanding
         myMap.remove(generateKey(9));
-        print_test_result(myMap.getBucketsCount() == 4, "remove() buckets count back to half with additional item removal");
+        print_test_result(myMap.getBucketsCount() == 8, "remove() no resizing happened right after an expansion");
+
+        // removing down to 3 entries (under a quarter of the loading factor) - buckets should be back to 4
+        for (int i=1; i<=5; i++) {
+            myMap.remove(generateKey(i));
+        }
+        print_test_result(myMap.getBucketsCount() == 4, "remove() buckets count back to half once mostly empty");
 
         // removing all elements, the default buckets count (4) should be retained
         for(String key: myMap.keySet()) {
@@ -142,6 +152,77 @@ public class Main {
         print_test_result(validResponse, "entrySet()");
     }
 
+    private static void test_metrics() {
+        MyMap<String, String> myMap = new MyMap<>();
+
+        for (int i=1; i<=9; i++) {
+            myMap.put(generateKey(i), generateValue(i));
+        }
+
+        // the 9th entry exceeds the loading factor for 4 buckets
+        MyMapMetrics metrics = myMap.getMetrics();
+        print_test_result(metrics.getRehashCount() == 1 && metrics.getRehashTotalNanos() > 0,
+                "metrics rehash counted on expansion");
+
+        int bucketsInHistogram = 0;
+        int entriesInHistogram = 0;
+        int[] histogram = metrics.getChainLengthHistogram();
+        for (int length=0; length<histogram.length; length++) {
+            bucketsInHistogram += histogram[length];
+            entriesInHistogram += length * histogram[length];
+        }
+        print_test_result(bucketsInHistogram == myMap.getBucketsCount() && entriesInHistogram == myMap.size(),
+                "metrics chain-length histogram covers all buckets and entries");
+
+        // every expansion doubles the buckets, so the rehash count is the number of doublings
+        // from the initial 4 buckets, each rehash counted once
+        for (int i=10; i<=1000; i++) {
+            myMap.put(generateKey(i), generateValue(i));
+        }
+        int doublings = Integer.numberOfTrailingZeros(myMap.getBucketsCount() / 4);
+        print_test_result(metrics.getRehashCount() == doublings,
+                "metrics rehash counted once per expansion");
+
+        // a few removes from a map which just grew don't shrink it
+        long rehashCount = metrics.getRehashCount();
+        myMap.remove(generateKey(1000));
+        myMap.put(generateKey(1000), generateValue(1000));
+        for (int i=1; i<=500; i++) {
+            myMap.remove(generateKey(i));
+        }
+        print_test_result(metrics.getRehashCount() == rehashCount,
+                "metrics no rehash for removes while the map is still half full");
+    }
+
+    private static void test_striped_concurrent_put() {
+        StripedMyMap<String, String> stripedMap = new StripedMyMap<>();
+
+        // 4 threads putting 1000 distinct keys each, at the same time
+        List<Thread> writers = new ArrayList<>();
+        for (int t=0; t<4; t++) {
+            int offset = t * 1000;
+            writers.add(new Thread(() -> {
+                for (int i=1; i<=1000; i++) {
+                    stripedMap.put(generateKey(offset + i), generateValue(offset + i));
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        for (Thread writer: writers) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        boolean validResponse = stripedMap.size() == 4000;
+        for (int i=1; i<=4000; i++) {
+            validResponse &= generateValue(i).equals(stripedMap.get(generateKey(i)));
+        }
+        print_test_result(validResponse, "StripedMyMap put() from concurrent threads");
+    }
+
     private static void print_test_result(boolean validResponse, String functionality) {
         if (validResponse) {
             System.out.println(functionality + " - assertion passed");
@@ -0,0 +1,31 @@
+package com.example.map;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event committed for every rehash of a MyMap, the duration of the event
+ * is the time spent moving the entries to the new buckets.
+ *
+ * When no recording is running, begin()/commit() are effectively no-ops
+ */
+@Name("com.example.map.Rehash")
+@Label("MyMap Rehash")
+@Category({"com.example", "MyMap"})
+@Description("Resizing of the buckets of a MyMap")
+class MapRehashEvent extends jdk.jfr.Event {
+
+    @Label("Expand")
+    boolean expand;
+
+    @Label("Old Buckets Count")
+    int oldBucketsCount;
+
+    @Label("New Buckets Count")
+    int newBucketsCount;
+
+    @Label("Entries")
+    int entries;
+}
@@ -23,6 +23,8 @@ public class MyMap<K,V> {
     private LinkedList[] buckets;
     private int size;
 
+    private final MyMapMetrics metrics = new MyMapMetrics(this);
+
     public MyMap() {
         initializeBuckets(DEFAULT_INITIAL_BUCKETS);
         this.size = 0;
@@ -66,7 +68,7 @@ public class MyMap<K,V> {
         // update the size of the map
         this.size++;
 
-        if (shouldDecreaseBuckets()) {
+        if (shouldExpandBuckets()) {
             rehash(true);
         }
 
@@ -133,7 +135,7 @@ public class MyMap<K,V> {
                 targetBucket.remove(entry);
                 this.size--;
 
-                if(shouldIncreaseBuckets()) {
+                if(shouldShrinkBuckets()) {
                     rehash(false);
                 }
 
@@ -190,13 +192,57 @@ public class MyMap<K,V> {
         return this.buckets.length;
     }
 
-    private boolean shouldIncreaseBuckets() {
-        // if half of the buckets can fit all the contents, but not less than default size
-        return ( (double) this.size / (this.buckets.length) ) * 0.5 < LOADING_FACTOR
+    /**
+     * @return number of key-value pairs in the map
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Rehash counters and chain-length stats of this map, can be exported via
+     * JmxExporter.register("MyMap", name, map.getMetrics())
+     */
+    public MyMapMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Complexity:
+     *       O(number of buckets) - only the bucket sizes are read, not the entries
+     * @param slots - number of slots in the histogram, chains of length (slots - 1)
+     *              or longer are all counted in the last slot
+     * @return index i holds the number of buckets with a chain of length i
+     */
+    int[] getChainLengthHistogram(int slots) {
+        int[] histogram = new int[slots];
+        LinkedList<?>[] currentBuckets = this.buckets;
+        for(LinkedList<?> bucket: currentBuckets) {
+            histogram[Math.min(bucket.size(), slots - 1)]++;
+        }
+
+        return histogram;
+    }
+
+    int getMaxChainLength() {
+        int max = 0;
+        LinkedList<?>[] currentBuckets = this.buckets;
+        for(LinkedList<?> bucket: currentBuckets) {
+            max = Math.max(max, bucket.size());
+        }
+
+        return max;
+    }
+
+    private boolean shouldShrinkBuckets() {
+        // only once the contents fit in a quarter of the loading-factor, so that right after
+        // shrinking the map is at half its loading-factor, and a few puts can't expand it back
+        // (nor a few removes after an expansion shrink it again), but not less than default size
+        return (double) this.size / this.buckets.length < LOADING_FACTOR / 4
                     && this.getNewBucketsCountAfterShrink() >= DEFAULT_INITIAL_BUCKETS;
     }
 
-    private boolean shouldDecreaseBuckets() {
+    private boolean shouldExpandBuckets() {
         // if the current contents are causing this map to exceed its loading-factor
         return (double) this.size / this.buckets.length > LOADING_FACTOR;
     }
@@ -217,6 +263,10 @@ public class MyMap<K,V> {
     }
 
     private void rehash(boolean expand) {
+        MapRehashEvent event = new MapRehashEvent();
+        event.begin();
+        long startNanos = System.nanoTime();
+
         // get a pointer to the old bucket
         LinkedList [] oldBuckets = this.buckets;
 
@@ -225,17 +275,31 @@ public class MyMap<K,V> {
                 this.getNewBucketsCountAfterShrink();
 
         this.initializeBuckets(newBucketCount);
-        this.size = 0;
 
-        // Now we'll put the key-value pairs from the old buckets, to the
+        // Now we'll move the entries from the old buckets, to the
         // new larger/smaller array of buckets
         // Resizing will change the distribution of these entries to spread
         // over the new buckets
+        // Keys are already unique, so the entries are appended directly instead of
+        // going through put(), which could trigger (and count) a nested rehash
         for(LinkedList<Entry<K,V>> bucket: oldBuckets) {
             for(Entry<K,V> entry: bucket) {
-                this.put(entry.key, entry.value);
+                @SuppressWarnings("unchecked")
+                LinkedList<Entry<K,V>> targetBucket =
+                        (LinkedList<Entry<K,V>>) this.buckets[getBucketIndex(entry.key)];
+                targetBucket.add(entry);
             }
         }
+
+        this.metrics.recordRehash(System.nanoTime() - startNanos);
+        event.end();
+        if (event.shouldCommit()) {
+            event.expand = expand;
+            event.oldBucketsCount = oldBuckets.length;
+            event.newBucketsCount = newBucketCount;
+            event.entries = this.size;
+            event.commit();
+        }
     }
 
     private int getNewBucketsCountAfterShrink() {
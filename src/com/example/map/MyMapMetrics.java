@@ -0,0 +1,65 @@
+package com.example.map;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for a single MyMap instance.
+ *
+ * The counters are LongAdders, which stripe the updates over per-thread cells,
+ * so recording from the hot path doesn't add a contended CAS on a single field.
+ *
+ * Chain lengths are not tracked on every put/remove, they're computed from the
+ * buckets only when someone asks for them (e.g. a JMX read), to keep the
+ * overhead off the put/get path
+ */
+public class MyMapMetrics implements MyMapMetricsMXBean {
+
+    /**
+     * Chains of this length or longer are collected in the last histogram slot.
+     * With a LOADING_FACTOR of 2, anything beyond that is already a bad sign
+     */
+    static final int HISTOGRAM_SLOTS = 8;
+
+    private final MyMap<?, ?> map;
+    private final LongAdder rehashCount = new LongAdder();
+    private final LongAdder rehashNanos = new LongAdder();
+
+    MyMapMetrics(MyMap<?, ?> map) {
+        this.map = map;
+    }
+
+    void recordRehash(long durationNanos) {
+        this.rehashCount.increment();
+        this.rehashNanos.add(durationNanos);
+    }
+
+    @Override
+    public int getSize() {
+        return this.map.size();
+    }
+
+    @Override
+    public int getBucketsCount() {
+        return this.map.getBucketsCount();
+    }
+
+    @Override
+    public long getRehashCount() {
+        return this.rehashCount.sum();
+    }
+
+    @Override
+    public long getRehashTotalNanos() {
+        return this.rehashNanos.sum();
+    }
+
+    @Override
+    public int getMaxChainLength() {
+        return this.map.getMaxChainLength();
+    }
+
+    @Override
+    public int[] getChainLengthHistogram() {
+        return this.map.getChainLengthHistogram(HISTOGRAM_SLOTS);
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.map;
+
+/**
+ * JMX view of a MyMap's internals, see MyMapMetrics
+ */
+public interface MyMapMetricsMXBean {
+
+    int getSize();
+
+    int getBucketsCount();
+
+    long getRehashCount();
+
+    long getRehashTotalNanos();
+
+    int getMaxChainLength();
+
+    /**
+     * @return index i holds the number of buckets with a chain of length i,
+     * the last index collects every chain of that length or longer
+     */
+    int[] getChainLengthHistogram();
+}
@@ -0,0 +1,103 @@
+package com.example.map;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Thread-safe map built out of several MyMaps (stripes), each one guarded by its own lock.
+ *
+ * A key always goes to the same stripe (picked from its hashCode), so threads working
+ * on keys of different stripes never wait for each other, unlike a single
+ * synchronized MyMap where every operation serializes on the same lock.
+ *
+ * Complexity:
+ *      same as MyMap for put/get/containsKey/remove, plus O(1) to pick the stripe
+ *      size/keySet visit every stripe, and are only consistent per stripe, not across
+ *      stripes, if the map is modified meanwhile
+ */
+public class StripedMyMap<K,V> {
+
+    private static final int DEFAULT_STRIPES = 16;
+
+    private final MyMap<K,V>[] stripes;
+
+    public StripedMyMap() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripesCount - rounded up to a power of 2, around the number of
+     *                     threads expected to use the map concurrently
+     */
+    public StripedMyMap(int stripesCount) {
+        int count = stripesCount <= 1 ? 1 : Integer.highestOneBit(stripesCount - 1) << 1;
+        @SuppressWarnings("unchecked")
+        MyMap<K,V>[] stripes = (MyMap<K,V>[]) new MyMap<?,?>[count];
+        this.stripes = stripes;
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new MyMap<>();
+        }
+    }
+
+    public V put(K key, V value) {
+        MyMap<K,V> stripe = stripeFor(key);
+        synchronized (stripe) {
+            return stripe.put(key, value);
+        }
+    }
+
+    public V get(K key) {
+        MyMap<K,V> stripe = stripeFor(key);
+        synchronized (stripe) {
+            return stripe.get(key);
+        }
+    }
+
+    public boolean containsKey(K key) {
+        MyMap<K,V> stripe = stripeFor(key);
+        synchronized (stripe) {
+            return stripe.containsKey(key);
+        }
+    }
+
+    public boolean remove(K key) {
+        MyMap<K,V> stripe = stripeFor(key);
+        synchronized (stripe) {
+            return stripe.remove(key);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (MyMap<K,V> stripe : this.stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+
+        return size;
+    }
+
+    public Set<K> keySet() {
+        Set<K> keys = new HashSet<>();
+        for (MyMap<K,V> stripe : this.stripes) {
+            synchronized (stripe) {
+                keys.addAll(stripe.keySet());
+            }
+        }
+
+        return keys;
+    }
+
+    public int getStripesCount() {
+        return this.stripes.length;
+    }
+
+    private MyMap<K,V> stripeFor(K key) {
+        // MyMap picks the bucket from the low bits of the hashCode, picking the stripe from
+        // the same bits would crowd all the keys of a stripe in a few of its buckets.
+        // The multiplication mixes the whole hashCode into the bits used for the stripe
+        int hash = key.hashCode() * 0x9E3779B9;
+        return this.stripes[(hash >>> 16) & (this.stripes.length - 1)];
+    }
+}
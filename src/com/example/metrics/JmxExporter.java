@@ -0,0 +1,60 @@
+package com.example.metrics;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Registers the metrics beans of this project with the platform MBeanServer,
+ * so they show up in JConsole / VisualVM / any JMX scraper under the
+ * "com.example" domain, e.g. com.example:type=SharedQueue,name=main
+ *
+ * Registration is explicit (not done in constructors), as a short-lived map or
+ * queue would otherwise leak through the MBeanServer holding a reference to it
+ */
+public final class JmxExporter {
+
+    private static final String DOMAIN = "com.example";
+
+    private JmxExporter() {
+    }
+
+    /**
+     * @param type - the kind of component, e.g. MyMap, SharedQueue, ServerTCP
+     * @param name - the instance name, unique per type
+     * @param mbean - an object implementing an *MXBean interface
+     * @return the name the bean was registered under, to be used for unregister()
+     */
+    public static ObjectName register(String type, String name, Object mbean) {
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);  // last one wins, e.g. a restarted server
+            }
+            server.registerMBean(mbean, objectName);
+            return objectName;
+        } catch (MalformedObjectNameException | InstanceAlreadyExistsException | MBeanRegistrationException
+                 | NotCompliantMBeanException | InstanceNotFoundException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static void unregister(ObjectName objectName) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (objectName != null && server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (InstanceNotFoundException | MBeanRegistrationException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
+}
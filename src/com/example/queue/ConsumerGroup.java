@@ -0,0 +1,126 @@
+package com.example.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Runs one consumer thread per shard of a ShardedQueue.
+ *
+ * Each consumer reads its own shard, so with the producers spreading the elements evenly,
+ * the consumers mostly take different locks and the throughput grows with their number,
+ * instead of all of them queuing up on the monitor of a single SharedQueue.
+ * An idle consumer steals from the other shards, so a shard with a backlog (or a slow
+ * consumer) doesn't hold up elements while other consumers have nothing to do.
+ *
+ * Ordering:
+ *      with stealing, the elements of a shard are removed in FIFO order, but the owner
+ *      and a thief can process consecutive elements concurrently, so the handler may see
+ *      them out of order. Without stealing, each shard is only read by its own consumer,
+ *      so elements added with the same key (ShardedQueue.add(element, key)) are
+ *      processed in the order they were added, at the cost of a busy shard not getting
+ *      help from idle consumers. This holds with a single ConsumerGroup per queue.
+ *
+ * SharedQueue doesn't notify readers of new elements, so a consumer finding all the
+ * shards empty backs off: it parks for a moment, twice as long each time it comes up
+ * empty again, up to MAX_IDLE_PARK_NANOS.
+ */
+public class ConsumerGroup<T> {
+
+    private static final long MIN_IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+    private static final long MAX_IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final ShardedQueue<T> queue;
+    private final Consumer<T> handler;
+    private final boolean stealing;
+    private final List<Thread> consumers = new ArrayList<>();
+
+    private final LongAdder consumed = new LongAdder();
+    private final LongAdder stolen = new LongAdder();
+
+    private volatile boolean running;
+
+    /**
+     * @param handler - called for every element read, from the consumer threads
+     */
+    public ConsumerGroup(ShardedQueue<T> queue, Consumer<T> handler) {
+        this(queue, handler, true);
+    }
+
+    /**
+     * @param stealing - whether idle consumers read from the other consumers' shards,
+     *                 false to keep the per-key processing order
+     */
+    public ConsumerGroup(ShardedQueue<T> queue, Consumer<T> handler, boolean stealing) {
+        this.queue = queue;
+        this.handler = handler;
+        this.stealing = stealing;
+    }
+
+    public synchronized void start() {
+        if (this.running) {
+            return;
+        }
+        this.running = true;
+        for (int shard = 0; shard < this.queue.getShardsCount(); shard++) {
+            int homeShard = shard;
+            Thread consumer = new Thread(() -> consume(homeShard), "consumer-" + shard);
+            this.consumers.add(consumer);
+            consumer.start();
+        }
+    }
+
+    /**
+     * Waits for the consumers to read what's left in the queue, then stops them.
+     * The producers should be stopped first, otherwise the queue may never be empty
+     */
+    public synchronized void stop() throws InterruptedException {
+        this.running = false;
+        for (Thread consumer : this.consumers) {
+            consumer.join();
+        }
+        this.consumers.clear();
+    }
+
+    public long getConsumedCount() {
+        return this.consumed.sum();
+    }
+
+    /**
+     * @return elements read by a consumer from another consumer's shard
+     */
+    public long getStolenCount() {
+        return this.stolen.sum();
+    }
+
+    private void consume(int homeShard) {
+        SharedQueue<T> ownShard = this.queue.getShard(homeShard);
+        long idleParkNanos = MIN_IDLE_PARK_NANOS;
+
+        while (true) {
+            T element = ownShard.remove();
+            if (element == null && this.stealing) {
+                element = this.queue.steal(homeShard);
+                if (element != null) {
+                    this.stolen.increment();
+                }
+            }
+
+            if (element == null) {
+                if (!this.running) {
+                    return;  // stopped, and nothing left to read
+                }
+                LockSupport.parkNanos(idleParkNanos);
+                idleParkNanos = Math.min(idleParkNanos * 2, MAX_IDLE_PARK_NANOS);
+                continue;
+            }
+
+            idleParkNanos = MIN_IDLE_PARK_NANOS;
+            this.handler.accept(element);
+            this.consumed.increment();
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.example.queue;
 
+import com.example.metrics.JmxExporter;
+
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Queue;
@@ -21,6 +23,7 @@ public class MainQueue {
         Queue<String> s;
 
         SharedQueue<String> sq = new SharedQueue<>(String.class);
+        JmxExporter.register("SharedQueue", "main", sq.getMetrics());
 
 //        for (int i=1; i<=5; i++) {
 //            if (i == 2) {
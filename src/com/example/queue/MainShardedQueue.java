@@ -0,0 +1,71 @@
+package com.example.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class MainShardedQueue {
+
+    private static final int PRODUCERS = 2;
+    private static final int ELEMENTS_PER_PRODUCER = 500_000;
+    private static final int SHARD_CAPACITY = 1024;
+
+    // Compares the consumer throughput of a single shard (all the consumers on the same
+    // SharedQueue, as in MainQueue) against one shard per consumer, for a growing number of consumers
+    public static void main(String [] args) throws InterruptedException {
+        int maxConsumers = Runtime.getRuntime().availableProcessors();
+
+        for (int consumers = 1; consumers <= maxConsumers; consumers *= 2) {
+            long singleShardNanos = run(consumers, 1);
+            long shardedNanos = run(consumers, consumers);
+            System.out.printf("%2d consumers: single SharedQueue %6d ms, one shard per consumer %6d ms%n", consumers,
+                    TimeUnit.NANOSECONDS.toMillis(singleShardNanos), TimeUnit.NANOSECONDS.toMillis(shardedNanos));
+        }
+    }
+
+    private static long run(int consumers, int shards) throws InterruptedException {
+        // each shard gets a consumer, the single shard is shared by all of them
+        ShardedQueue<String> queue = new ShardedQueue<>(String.class, shards, SHARD_CAPACITY);
+        List<ConsumerGroup<String>> groups = new ArrayList<>();
+        for (int i = 0; i < consumers / shards; i++) {
+            groups.add(new ConsumerGroup<>(queue, MainShardedQueue::process));
+        }
+
+        long startNanos = System.nanoTime();
+        groups.forEach(ConsumerGroup::start);
+
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            Thread producer = new Thread(() -> {
+                for (int i = 0; i < ELEMENTS_PER_PRODUCER; i++) {
+                    String element = "El_" + i;
+                    while (!queue.add(element)) {
+                        Thread.onSpinWait();  // all shards full, wait for the consumers to catch up
+                    }
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        for (ConsumerGroup<String> group : groups) {
+            group.stop();
+        }
+
+        return System.nanoTime() - startNanos;
+    }
+
+    // a little work per element, so the consumers aren't only measuring the queue's lock
+    private static void process(String element) {
+        int hash = 0;
+        for (int i = 0; i < 200; i++) {
+            hash = hash * 31 + element.charAt(i % element.length());
+        }
+        if (hash == 42) {
+            System.out.println(element);
+        }
+    }
+}
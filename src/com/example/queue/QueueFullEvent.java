@@ -0,0 +1,22 @@
+package com.example.queue;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event committed when an add() is rejected because the SharedQueue is full.
+ *
+ * Waiting for the queue's monitor is already covered by the built-in
+ * jdk.JavaMonitorEnter event, so there's no custom event for it
+ */
+@Name("com.example.queue.QueueFull")
+@Label("SharedQueue Full")
+@Category({"com.example", "SharedQueue"})
+@Description("An element was rejected as the SharedQueue was at capacity")
+class QueueFullEvent extends jdk.jfr.Event {
+
+    @Label("Capacity")
+    int capacity;
+}
@@ -0,0 +1,218 @@
+package com.example.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class QueueTests {
+
+    private static final int PRODUCERS = 3;
+    private static final int ELEMENTS_PER_PRODUCER = 100_000;
+
+    public static void main(String [] args) throws InterruptedException {
+        runQueueTests();
+    }
+
+    private static void runQueueTests() throws InterruptedException {
+        test_add_and_remove_wrap_around();
+        test_addEvictingOldest();
+        test_drainTo();
+        test_capacity_validation();
+        test_sharded_remove_per_key_fifo();
+        test_consumer_group_consumes_exactly_once();
+        test_consumer_group_key_order_without_stealing();
+    }
+
+    private static void test_add_and_remove_wrap_around() {
+        SharedQueue<String> queue = new SharedQueue<>(String.class, 3);
+
+        boolean validResponse = queue.add("El_1") && queue.add("El_2") && queue.add("El_3");
+        validResponse &= !queue.add("El_4");
+        print_test_result(validResponse, "add() rejected once the capacity is reached");
+
+        // front and back both go past the end of the array and circle back to 0
+        validResponse = "El_1".equals(queue.remove()) && "El_2".equals(queue.remove());
+        validResponse &= queue.add("El_4") && queue.add("El_5");
+        validResponse &= "El_3".equals(queue.remove())
+                && "El_4".equals(queue.remove())
+                && "El_5".equals(queue.remove())
+                && queue.remove() == null;
+        print_test_result(validResponse, "remove() keeps FIFO order across the wrap-around");
+    }
+
+    private static void test_addEvictingOldest() {
+        SharedQueue<String> queue = new SharedQueue<>(String.class, 3);
+
+        boolean validResponse = true;
+        for (int i=1; i<=3; i++) {
+            validResponse &= queue.addEvictingOldest("El_" + i) == null;
+        }
+        print_test_result(validResponse, "addEvictingOldest() evicts nothing while there's room");
+
+        // the oldest elements are evicted in the order they were added
+        validResponse = "El_1".equals(queue.addEvictingOldest("El_4"))
+                && "El_2".equals(queue.addEvictingOldest("El_5"))
+                && "El_3".equals(queue.addEvictingOldest("El_6"))
+                && "El_4".equals(queue.addEvictingOldest("El_7"));
+        print_test_result(validResponse, "addEvictingOldest() evicts the oldest element when full");
+
+        validResponse = queue.size() == 3
+                && "El_5".equals(queue.remove())
+                && "El_6".equals(queue.remove())
+                && "El_7".equals(queue.remove())
+                && queue.remove() == null;
+        print_test_result(validResponse, "addEvictingOldest() keeps the newest elements in FIFO order");
+
+        print_test_result(queue.getMetrics().getEvictedCount() == 4, "addEvictingOldest() evictions counted");
+    }
+
+    private static void test_drainTo() {
+        SharedQueue<String> queue = new SharedQueue<>(String.class, 4);
+        queue.add("El_1");
+        queue.add("El_2");
+        queue.remove();
+        for (int i=3; i<=5; i++) {
+            queue.add("El_" + i);  // wraps around the end of the array
+        }
+
+        List<String> drained = new ArrayList<>();
+        boolean validResponse = queue.drainTo(drained, 2) == 2
+                && drained.equals(List.of("El_2", "El_3"));
+        print_test_result(validResponse, "drainTo() takes at most maxElements, oldest first");
+
+        validResponse = queue.drainTo(drained, 10) == 2
+                && drained.equals(List.of("El_2", "El_3", "El_4", "El_5"));
+        print_test_result(validResponse, "drainTo() stops when the queue is empty");
+
+        validResponse = queue.drainTo(drained, 10) == 0 && queue.size() == 0 && queue.add("El_6")
+                && "El_6".equals(queue.remove());
+        print_test_result(validResponse, "drainTo() on an empty queue, queue usable afterwards");
+    }
+
+    private static void test_capacity_validation() {
+        boolean validResponse = true;
+        for (int capacity : new int[] {0, -1}) {
+            try {
+                new SharedQueue<>(String.class, capacity);
+                validResponse = false;
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        print_test_result(validResponse, "SharedQueue rejects a capacity that isn't positive");
+
+        validResponse = true;
+        for (int shardsCount : new int[] {0, -1}) {
+            try {
+                new ShardedQueue<>(String.class, shardsCount, 10);
+                validResponse = false;
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        print_test_result(validResponse, "ShardedQueue rejects a shards count that isn't positive");
+    }
+
+    private static void test_sharded_remove_per_key_fifo() {
+        ShardedQueue<Integer> queue = new ShardedQueue<>(Integer.class, 3, 100);
+        for (int i=0; i<30; i++) {
+            queue.add(i, "same_key");
+        }
+
+        // a single reader, starting from any shard, gets the key's elements in order
+        boolean validResponse = true;
+        for (int i=0; i<30; i++) {
+            Integer element = queue.remove(i % queue.getShardsCount());
+            validResponse &= element != null && element == i;
+        }
+        validResponse &= queue.remove(0) == null;
+        print_test_result(validResponse, "ShardedQueue remove() keeps the order of elements of a key");
+    }
+
+    private static void test_consumer_group_consumes_exactly_once() throws InterruptedException {
+        ShardedQueue<String> queue = new ShardedQueue<>(String.class, 4, 64);
+        Map<String, AtomicInteger> timesConsumed = new ConcurrentHashMap<>();
+        ConsumerGroup<String> group = new ConsumerGroup<>(queue,
+                element -> timesConsumed.computeIfAbsent(element, e -> new AtomicInteger()).incrementAndGet());
+
+        group.start();
+        // half of the elements round-robin, the other half by key
+        runProducers(queue, (producer, i) -> producer + "_" + i, (producer, i) -> i % 2 == 0 ? null : "key_" + producer);
+        group.stop();
+
+        boolean validResponse = timesConsumed.size() == PRODUCERS * ELEMENTS_PER_PRODUCER
+                && group.getConsumedCount() == PRODUCERS * ELEMENTS_PER_PRODUCER
+                && queue.size() == 0;
+        for (AtomicInteger times : timesConsumed.values()) {
+            validResponse &= times.get() == 1;
+        }
+        print_test_result(validResponse, "ConsumerGroup consumes every element exactly once");
+    }
+
+    private static void test_consumer_group_key_order_without_stealing() throws InterruptedException {
+        ShardedQueue<String> queue = new ShardedQueue<>(String.class, 4, 64);
+        Map<String, AtomicLong> lastSequence = new ConcurrentHashMap<>();
+        AtomicInteger outOfOrder = new AtomicInteger();
+
+        // elements are "key:sequence", each key is produced by a single producer
+        ConsumerGroup<String> group = new ConsumerGroup<>(queue, element -> {
+            int separator = element.indexOf(':');
+            long sequence = Long.parseLong(element.substring(separator + 1));
+            AtomicLong last = lastSequence.computeIfAbsent(element.substring(0, separator), key -> new AtomicLong(-1));
+            if (last.getAndSet(sequence) >= sequence) {
+                outOfOrder.incrementAndGet();
+            }
+        }, false);
+
+        group.start();
+        runProducers(queue, (producer, i) -> "key_" + producer + "_" + (i % 10) + ":" + i,
+                (producer, i) -> "key_" + producer + "_" + (i % 10));
+        group.stop();
+
+        boolean validResponse = outOfOrder.get() == 0
+                && group.getConsumedCount() == PRODUCERS * ELEMENTS_PER_PRODUCER
+                && group.getStolenCount() == 0;
+        print_test_result(validResponse, "ConsumerGroup without stealing processes the elements of a key in order");
+    }
+
+    private interface ElementFactory {
+        String create(int producer, int i);
+    }
+
+    /**
+     * Runs PRODUCERS threads adding ELEMENTS_PER_PRODUCER elements each,
+     * retrying while the shards are full. A null key adds round-robin
+     */
+    private static void runProducers(ShardedQueue<String> queue, ElementFactory elements, ElementFactory keys)
+            throws InterruptedException {
+        List<Thread> producers = new ArrayList<>();
+        for (int p=0; p<PRODUCERS; p++) {
+            int producer = p;
+            producers.add(new Thread(() -> {
+                for (int i=0; i<ELEMENTS_PER_PRODUCER; i++) {
+                    String element = elements.create(producer, i);
+                    String key = keys.create(producer, i);
+                    while (!(key == null ? queue.add(element) : queue.add(element, key))) {
+                        Thread.onSpinWait();
+                    }
+                }
+            }));
+        }
+        producers.forEach(Thread::start);
+        for (Thread producer : producers) {
+            producer.join();
+        }
+    }
+
+    private static void print_test_result(boolean validResponse, String functionality) {
+        if (validResponse) {
+            System.out.println(functionality + " - assertion passed");
+        }
+        else {
+            System.out.println(functionality + " - assertion FAILED!!");
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.queue;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A queue split into several SharedQueues (shards), each one with its own lock,
+ * so that readers working on different shards don't block each other access.
+ *
+ * Ordering:
+ *      every shard is FIFO, the queue as a whole is not. Elements added with the same
+ *      key always go to the same shard, so they're removed in the order they were added.
+ *      That's removal order only: two consumers taking consecutive elements of a shard
+ *      (e.g. its owner and a consumer stealing from it) may still process them in either
+ *      order, see ConsumerGroup's no-stealing mode when the processing order matters
+ *
+ * Producers spread the elements over the shards round-robin (or by key), consumers read
+ * their own (home) shard first, and steal from the next shards when it's empty.
+ * See ConsumerGroup for running one consumer per shard
+ */
+public class ShardedQueue<T> {
+
+    private final SharedQueue<T>[] shards;
+
+    /**
+     * Round-robin position of each producer thread, kept per thread so the
+     * producers don't contend on a shared counter
+     */
+    private final ThreadLocal<int[]> producerCursor;
+
+    public ShardedQueue(Class<T> clazz, int shardsCount, int shardCapacity) {
+        if (shardsCount <= 0) {
+            throw new IllegalArgumentException("Shards count must be positive: " + shardsCount);
+        }
+        @SuppressWarnings("unchecked")
+        SharedQueue<T>[] shards = (SharedQueue<T>[]) new SharedQueue<?>[shardsCount];
+        this.shards = shards;
+        for (int i = 0; i < shardsCount; i++) {
+            this.shards[i] = new SharedQueue<>(clazz, shardCapacity);
+        }
+        // each producer starts at a different shard
+        this.producerCursor = ThreadLocal.withInitial(() -> new int[] {ThreadLocalRandom.current().nextInt(shardsCount)});
+    }
+
+    /**
+     * Adds the element to the next shard in round-robin order, or to the
+     * following ones if that shard is full
+     *
+     * @return false if all the shards are full
+     */
+    public boolean add(T element) {
+        int[] cursor = this.producerCursor.get();
+        int start = cursor[0];
+        cursor[0] = (start + 1) % this.shards.length;
+
+        for (int i = 0; i < this.shards.length; i++) {
+            if (this.shards[(start + i) % this.shards.length].add(element)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the element to the shard of the key, so that the elements of a key
+     * are read in the order they were added
+     *
+     * @return false if the key's shard is full
+     */
+    public boolean add(T element, Object key) {
+        return this.shards[shardIndex(key)].add(element);
+    }
+
+    /**
+     * Reads from the home shard, or steals from the next shards if it's empty
+     *
+     * @param homeShard - the shard of the calling consumer
+     * @return null if all the shards are empty
+     */
+    public T remove(int homeShard) {
+        T element = this.shards[homeShard].remove();
+        return element != null ? element : steal(homeShard);
+    }
+
+    /**
+     * Reads from the shards following the home shard, the home shard itself is skipped
+     *
+     * @return null if all the other shards are empty
+     */
+    public T steal(int homeShard) {
+        for (int i = 1; i < this.shards.length; i++) {
+            T element = this.shards[(homeShard + i) % this.shards.length].remove();
+            if (element != null) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        int size = 0;
+        for (SharedQueue<T> shard : this.shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    public int getShardsCount() {
+        return this.shards.length;
+    }
+
+    /**
+     * To look at a shard's metrics, e.g. JmxExporter.register("SharedQueue", "shard-0", queue.getShard(0).getMetrics())
+     */
+    public SharedQueue<T> getShard(int index) {
+        return this.shards[index];
+    }
+
+    private int shardIndex(Object key) {
+        int hash = key.hashCode() * 0x9E3779B9;
+        return (hash >>> 16) % this.shards.length;
+    }
+}
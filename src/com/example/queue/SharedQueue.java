@@ -1,6 +1,7 @@
 package com.example.queue;
 
 import java.lang.reflect.Array;
+import java.util.Collection;
 
 public class SharedQueue <T> {
 
@@ -10,34 +11,153 @@ public class SharedQueue <T> {
     private int back = -1;
     private int size = 0;
     private final T [] data;
+    private final int capacity;
+
+    private final SharedQueueMetrics metrics = new SharedQueueMetrics(this);
 
     public SharedQueue(Class<T> clazz) {
-        this.data = (T[]) Array.newInstance(clazz, DEFAULT_QUEUE_SIZE);
+        this(clazz, DEFAULT_QUEUE_SIZE);
     }
 
-    public synchronized boolean add(T element) {
-        if (this.size >= DEFAULT_QUEUE_SIZE) {
-            return false;
+    public SharedQueue(Class<T> clazz, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive: " + capacity);
         }
+        this.capacity = capacity;
+        this.data = (T[]) Array.newInstance(clazz, capacity);
+    }
 
-        incrementBack();
-        data[back] = element;
-        this.size++;
+    public boolean add(T element) {
+        long startNanos = System.nanoTime();
+        boolean added = false;
+        long acquiredNanos;
+        synchronized (this) {
+            acquiredNanos = System.nanoTime();
+
+            if (this.size < this.capacity) {
+                incrementBack();
+                data[back] = element;
+                this.size++;
+                added = true;
+            }
+        }
 
-        return true;
+        // counters and events are recorded after releasing the lock, to keep the
+        // time spent in the locked section to the minimum
+        this.metrics.recordLockWait(acquiredNanos - startNanos);
+        this.metrics.recordAdd(added);
+        if (!added) {
+            QueueFullEvent event = new QueueFullEvent();
+            if (event.shouldCommit()) {
+                event.capacity = this.capacity;
+                event.commit();
+            }
+        }
+
+        return added;
     }
 
-    public synchronized T remove() {
-        if(size <= 0) {
-            return null;
+    public T remove() {
+        long startNanos = System.nanoTime();
+        T element = null;
+        boolean found = false;
+        long acquiredNanos;
+        synchronized (this) {
+            acquiredNanos = System.nanoTime();
+
+            if(size > 0) {
+                incrementFront();
+                element = data[this.front];
+                data[this.front] = null;  // don't hold on to removed elements
+                this.size--;
+                found = true;
+            }
         }
 
-        incrementFront();
-        T element = data[this.front];
-        this.size--;
+        this.metrics.recordLockWait(acquiredNanos - startNanos);
+        this.metrics.recordRemove(found);
         return element;
     }
 
+    /**
+     * Adds the element even if the queue is full, by dropping the oldest element
+     * to make room for it
+     *
+     * @return the element dropped, null if the queue had room
+     */
+    public T addEvictingOldest(T element) {
+        long startNanos = System.nanoTime();
+        T evicted = null;
+        long acquiredNanos;
+        synchronized (this) {
+            acquiredNanos = System.nanoTime();
+
+            if (this.size >= this.capacity) {
+                incrementFront();
+                evicted = data[this.front];
+                this.size--;
+            }
+            incrementBack();
+            data[back] = element;
+            this.size++;
+        }
+
+        this.metrics.recordLockWait(acquiredNanos - startNanos);
+        this.metrics.recordAdd(true);
+        if (evicted != null) {
+            this.metrics.recordEviction();
+        }
+        return evicted;
+    }
+
+    /**
+     * Removes up to maxElements in one go, taking the lock once
+     * instead of once per element
+     *
+     * @return number of elements moved to the target
+     */
+    public int drainTo(Collection<? super T> target, int maxElements) {
+        long startNanos = System.nanoTime();
+        int drained = 0;
+        long acquiredNanos;
+        synchronized (this) {
+            acquiredNanos = System.nanoTime();
+
+            while (this.size > 0 && drained < maxElements) {
+                incrementFront();
+                target.add(data[this.front]);
+                data[this.front] = null;
+                this.size--;
+                drained++;
+            }
+        }
+
+        this.metrics.recordLockWait(acquiredNanos - startNanos);
+        if (drained > 0) {
+            this.metrics.recordRemoved(drained);
+        }
+        else {
+            this.metrics.recordRemove(false);
+        }
+        return drained;
+    }
+
+    public synchronized int size() {
+        return this.size;
+    }
+
+    public int capacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Add/remove counters and lock-wait time of this queue, can be exported via
+     * JmxExporter.register("SharedQueue", name, queue.getMetrics())
+     */
+    public SharedQueueMetrics getMetrics() {
+        return this.metrics;
+    }
+
     private void incrementFront() {
         if(shouldResetPointer(this.front)) {
             this.front = 0;  // circle back to 0 if reached end of array
@@ -56,7 +176,7 @@ public class SharedQueue <T> {
         }
     }
 
-    private static boolean shouldResetPointer(int pointerPosition) {
-        return pointerPosition >= DEFAULT_QUEUE_SIZE-1;
+    private boolean shouldResetPointer(int pointerPosition) {
+        return pointerPosition >= this.capacity-1;
     }
 }
@@ -0,0 +1,106 @@
+package com.example.queue;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for a single SharedQueue instance.
+ *
+ * The counters are LongAdders, so the readers/writers recording into them
+ * don't contend on a second shared field, and JMX reads never take the
+ * queue's lock (except for the depth).
+ *
+ * A full queue shows up as a growing rejected-add count (or evicted count, with
+ * addEvictingOldest), starving readers as a growing empty-poll count, and contention
+ * between readers/writers as the lock-wait time per acquisition going up
+ */
+public class SharedQueueMetrics implements SharedQueueMetricsMXBean {
+
+    private final SharedQueue<?> queue;
+    private final LongAdder added = new LongAdder();
+    private final LongAdder rejectedAdds = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder removed = new LongAdder();
+    private final LongAdder emptyPolls = new LongAdder();
+    private final LongAdder lockAcquisitions = new LongAdder();
+    private final LongAdder lockWaitNanos = new LongAdder();
+
+    SharedQueueMetrics(SharedQueue<?> queue) {
+        this.queue = queue;
+    }
+
+    void recordLockWait(long waitNanos) {
+        this.lockAcquisitions.increment();
+        this.lockWaitNanos.add(waitNanos);
+    }
+
+    void recordAdd(boolean accepted) {
+        if (accepted) {
+            this.added.increment();
+        }
+        else {
+            this.rejectedAdds.increment();
+        }
+    }
+
+    void recordEviction() {
+        this.evicted.increment();
+    }
+
+    void recordRemoved(int count) {
+        this.removed.add(count);
+    }
+
+    void recordRemove(boolean found) {
+        if (found) {
+            this.removed.increment();
+        }
+        else {
+            this.emptyPolls.increment();
+        }
+    }
+
+    @Override
+    public int getDepth() {
+        return this.queue.size();
+    }
+
+    @Override
+    public int getCapacity() {
+        return this.queue.capacity();
+    }
+
+    @Override
+    public long getAddedCount() {
+        return this.added.sum();
+    }
+
+    @Override
+    public long getRejectedAddCount() {
+        return this.rejectedAdds.sum();
+    }
+
+    @Override
+    public long getEvictedCount() {
+        return this.evicted.sum();
+    }
+
+    @Override
+    public long getRemovedCount() {
+        return this.removed.sum();
+    }
+
+    @Override
+    public long getEmptyPollCount() {
+        return this.emptyPolls.sum();
+    }
+
+    @Override
+    public long getLockAcquisitionCount() {
+        return this.lockAcquisitions.sum();
+    }
+
+    @Override
+    public long getLockWaitTotalNanos() {
+        return this.lockWaitNanos.sum();
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.queue;
+
+/**
+ * JMX view of a SharedQueue, see SharedQueueMetrics
+ */
+public interface SharedQueueMetricsMXBean {
+
+    int getDepth();
+
+    int getCapacity();
+
+    long getAddedCount();
+
+    long getRejectedAddCount();
+
+    long getEvictedCount();
+
+    long getRemovedCount();
+
+    long getEmptyPollCount();
+
+    long getLockAcquisitionCount();
+
+    long getLockWaitTotalNanos();
+}